@@ -1,6 +1,7 @@
 package com.numb3r3.common.concurrent;
 
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -103,6 +104,76 @@ public class Parallel {
         fjPool.invokeAll(createCallables(elements, operation));
     }
 
+    /**
+     * @return the number of cores used by the parallel operations
+     */
+    public static int numCores() {
+        return NUM_CORES;
+    }
+
+    /**
+     * Split {@code [from, to)} into at most {@code parts} consecutive ranges of (almost) equal length.
+     *
+     * @return range boundaries {@code b} such that range {@code r} is {@code [b[r], b[r+1])}
+     */
+    public static int[] split(int from, int to, int parts) {
+        int n = to - from;
+        parts = Math.max(1, Math.min(parts, n));
+
+        int[] bounds = new int[parts + 1];
+        for (int r = 0; r <= parts; r++)
+            bounds[r] = from + (int) ((long) n * r / parts);
+
+        return bounds;
+    }
+
+    /**
+     * Perform an operation on each range {@code [bounds[r], bounds[r+1])} in the fork-join pool, and block until all
+     * of them are done. A single range is run in the calling thread. Any exception thrown by an operation is rethrown
+     * to the caller.
+     *
+     * @param bounds    range boundaries, e.g. as produced by {@link #split(int, int, int)}
+     * @param operation operation to perform on each range
+     */
+    public static void blockingRanges(final int[] bounds, final RangeOperation operation) {
+        if (bounds.length <= 2) {
+            if (bounds.length == 2)
+                operation.perform(bounds[0], bounds[1]);
+            return;
+        }
+
+        List<Callable<Void>> callables = new ArrayList<Callable<Void>>(bounds.length - 1);
+        for (int r = 0; r < bounds.length - 1; r++) {
+            final int from = bounds[r], to = bounds[r + 1];
+            if (from == to)
+                continue;
+
+            callables.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    operation.perform(from, to);
+                    return null;
+                }
+            });
+        }
+
+        for (Future<Void> future : fjPool.invokeAll(callables)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
     public static <T> Collection<Callable<Void>> createCallables(final Iterable<T> elements, final Operation<T> operation) {
         List<Callable<Void>> callables = new LinkedList<Callable<Void>>();
         for (final T elem : elements) {
@@ -123,4 +194,8 @@ public class Parallel {
         public void perform(T pParameter);
     }
 
+    public static interface RangeOperation {
+        public void perform(int from, int to);
+    }
+
 }
\ No newline at end of file
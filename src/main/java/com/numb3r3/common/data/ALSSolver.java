@@ -0,0 +1,123 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+/**
+ * Batched least-squares step of Alternating Least Squares (ALS) matrix factorization <br>
+ *
+ * For every row {@code u} of a rating matrix {@code R}, with the factors {@code Y} of the columns held fixed, the new
+ * factor {@code x_u} solves the {@code k x k} SPD system
+ *
+ * <pre>
+ *     (Y_u^T Y_u + lambda * I) x_u = Y_u^T r_u
+ * </pre>
+ *
+ * where {@code Y_u} holds the rows of {@code Y} for the columns rated in row {@code u}. The Gram matrix of each row is
+ * accumulated from the CRS arrays into a thread-local buffer and factored in place by Cholesky, and the solution is
+ * written directly into the output factor matrix, so nothing is allocated per row. Rows are processed in parallel.
+ */
+public class ALSSolver {
+
+    // chunks per core, so that rows of uneven cost are balanced by the pool
+    private static final int CHUNKS_PER_CORE = 4;
+
+    /**
+     * Solve for the row factors (e.g., users) with the column factors (e.g., items) fixed
+     *
+     * @param ratings       a sparse rating matrix
+     * @param columnFactors fixed factors of the columns, of size {@code numColumns x k}
+     * @param lambda        regularization parameter, positive
+     * @param rowFactors    output factors of the rows, of size {@code numRows x k}
+     */
+    public static void updateRows(SparseMatrix ratings, DenseMatrix columnFactors, double lambda,
+                                  DenseMatrix rowFactors) {
+        assert ratings.numColumns == columnFactors.numRows;
+        assert ratings.numRows == rowFactors.numRows;
+
+        solve(ratings.numRows, ratings.rowPtr, ratings.colInd, ratings.rowData, columnFactors, lambda, rowFactors);
+    }
+
+    /**
+     * Solve for the column factors (e.g., items) with the row factors (e.g., users) fixed, using the CCS structure of
+     * the rating matrix. The rating matrix is only read, so it must have been built with its CCS structure, e.g., by
+     * {@link SparseMatrixBuilder#build(boolean)}
+     *
+     * @param ratings       a sparse rating matrix
+     * @param rowFactors    fixed factors of the rows, of size {@code numRows x k}
+     * @param lambda        regularization parameter, positive
+     * @param columnFactors output factors of the columns, of size {@code numColumns x k}
+     */
+    public static void updateColumns(SparseMatrix ratings, DenseMatrix rowFactors, double lambda,
+                                     DenseMatrix columnFactors) {
+        assert ratings.numRows == rowFactors.numRows;
+        assert ratings.numColumns == columnFactors.numRows;
+
+        if (ratings.colPtr == null)
+            throw new IllegalArgumentException("The rating matrix has no CCS structure");
+
+        solve(ratings.numColumns, ratings.colPtr, ratings.rowInd, ratings.colData, rowFactors, lambda,
+                columnFactors);
+    }
+
+    /**
+     * Solve for the factors of {@code n} vectors of a compressed structure {@code (ptr, ind, vals)}
+     */
+    private static void solve(int n, final int[] ptr, final int[] ind, final double[] vals, DenseMatrix fixed,
+                              final double lambda, DenseMatrix result) {
+        if (fixed.numColumns != result.numColumns)
+            throw new IllegalArgumentException("Factor dimensions disagree: " + fixed.numColumns + " != "
+                    + result.numColumns);
+
+        final int k = fixed.numColumns;
+        final double[][] y = fixed.data, x = result.data;
+
+        final ThreadLocal<double[][]> grams = new ThreadLocal<double[][]>() {
+            @Override
+            protected double[][] initialValue() {
+                return new double[k][k];
+            }
+        };
+
+        int[] bounds = SparseMatrix.partitionRows(ptr, n, Parallel.numCores() * CHUNKS_PER_CORE);
+        Parallel.blockingRanges(bounds, new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                double[][] a = grams.get();
+
+                for (int u = from; u < to; u++) {
+                    double[] xu = x[u];
+
+                    // lower triangle of Y_u^T Y_u + lambda * I, and Y_u^T r_u accumulated into the output row
+                    for (int p = 0; p < k; p++) {
+                        double[] ap = a[p];
+                        for (int q = 0; q <= p; q++)
+                            ap[q] = 0;
+                        ap[p] = lambda;
+                        xu[p] = 0;
+                    }
+
+                    for (int j = ptr[u]; j < ptr[u + 1]; j++) {
+                        double r = vals[j];
+                        double[] yj = y[ind[j]];
+
+                        for (int p = 0; p < k; p++) {
+                            double yp = yj[p];
+                            double[] ap = a[p];
+                            for (int q = 0; q <= p; q++)
+                                ap[q] += yp * yj[q];
+
+                            xu[p] += r * yp;
+                        }
+                    }
+
+                    if (!CholeskyDecomposition.decompose(a, k))
+                        throw new IllegalArgumentException("The normal equations of vector " + u
+                                + " are not positive definite; is lambda positive?");
+
+                    CholeskyDecomposition.solve(a, k, xu);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,453 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.NamedThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Data Structure: sparse matrix that accepts new entries, rows and columns after construction <br>
+ *
+ * The matrix consists of a frozen {@link SparseMatrix} base (CRS, plus CCS if the initial base has it) and a small
+ * mutable delta segment holding the entries written since the last compaction. Reads consult both, with the delta
+ * taking precedence, so new entries are visible immediately. Compaction merges the delta into a new base row by row;
+ * it runs on a background thread once the delta exceeds a threshold, or on demand through {@link #compact()}, and
+ * writes and reads may continue while it runs.
+ * <p/>
+ * All methods are thread-safe.
+ */
+public class AppendableSparseMatrix {
+
+    // default number of delta entries that triggers a background compaction
+    public static final int DEFAULT_COMPACT_THRESHOLD = 1 << 20;
+
+    private static final ExecutorService compactor = Executors.newCachedThreadPool(
+            new NamedThreadFactory("SparseMatrix.compact"));
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactLock = new Object();
+    private final AtomicBoolean isCompactScheduled = new AtomicBoolean();
+
+    private final int compactThreshold;
+    private final boolean isCCSUsed;
+
+    // matrix dimension, including appended rows and columns
+    private int numRows, numColumns;
+
+    // frozen base
+    private SparseMatrix base;
+
+    // delta being merged by a running compaction, or null
+    private Map<Integer, SparseVector> frozen;
+
+    // delta receiving new entries
+    private Map<Integer, SparseVector> active = new HashMap<Integer, SparseVector>();
+    private int activeSize;
+
+    /**
+     * Construct an appendable matrix on top of a given base matrix, which is used as it is and must not be modified
+     * afterwards
+     *
+     * @param base the initial base matrix
+     */
+    public AppendableSparseMatrix(SparseMatrix base) {
+        this(base, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Construct an appendable matrix on top of a given base matrix, which is used as it is and must not be modified
+     * afterwards
+     *
+     * @param base             the initial base matrix
+     * @param compactThreshold number of delta entries that triggers a background compaction; non-positive to compact
+     *                         only on demand
+     */
+    public AppendableSparseMatrix(SparseMatrix base, int compactThreshold) {
+        this.base = base;
+        this.numRows = base.numRows;
+        this.numColumns = base.numColumns;
+        this.isCCSUsed = base.colPtr != null;
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Construct an empty appendable matrix with CRS structures (CCS structure optional)
+     */
+    public AppendableSparseMatrix(int rows, int cols, boolean isCCSUsed) {
+        this(new SparseMatrixBuilder(rows, cols).build(isCCSUsed));
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int numRows() {
+        lock.readLock().lock();
+        try {
+            return numRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numColumns() {
+        lock.readLock().lock();
+        try {
+            return numColumns;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of entries in the delta segments, i.e. not yet compacted into the base
+     */
+    public int deltaSize() {
+        lock.readLock().lock();
+        try {
+            return activeSize + size(frozen);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Set a value to entry [row, column]. The matrix grows if the row or column is beyond its current dimension.
+     *
+     * @param row    row id
+     * @param column column id
+     * @param val    value to set
+     */
+    public void set(int row, int column, double val) {
+        if (row < 0 || column < 0)
+            throw new IndexOutOfBoundsException("Entry (" + row + ", " + column + ") has a negative index");
+
+        boolean isCompactNeeded;
+
+        lock.writeLock().lock();
+        try {
+            SparseVector vec = active.get(row);
+            if (vec == null) {
+                vec = new SparseVector(Integer.MAX_VALUE);
+                active.put(row, vec);
+            }
+
+            int count = vec.count;
+            vec.set(column, val);
+            activeSize += vec.count - count;
+
+            numRows = Math.max(numRows, row + 1);
+            numColumns = Math.max(numColumns, column + 1);
+
+            isCompactNeeded = compactThreshold > 0 && activeSize >= compactThreshold;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (isCompactNeeded)
+            scheduleCompact();
+    }
+
+    /**
+     * Add a value to entry [row, column]. The matrix grows if the row or column is beyond its current dimension.
+     *
+     * @param row    row id
+     * @param column column id
+     * @param val    value to add
+     */
+    public void add(int row, int column, double val) {
+        lock.writeLock().lock();
+        try {
+            // reentrant: set takes the write lock again
+            set(row, column, get(row, column) + val);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieve value at entry [row, column]
+     *
+     * @param row    row id
+     * @param column column id
+     * @return value at entry [row, column]
+     */
+    public double get(int row, int column) {
+        lock.readLock().lock();
+        try {
+            SparseVector vec = active.get(row);
+            if (vec != null && vec.contains(column))
+                return vec.get(column);
+
+            if (frozen != null) {
+                vec = frozen.get(row);
+                if (vec != null && vec.contains(column))
+                    return vec.get(column);
+            }
+
+            if (row < base.numRows && column < base.numColumns)
+                return base.get(row, column);
+
+            return 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * get a row sparse vector of a matrix
+     *
+     * @param row row id
+     * @return a sparse vector of {index, value}
+     */
+    public SparseVector row(int row) {
+        lock.readLock().lock();
+        try {
+            SparseVector baseRow = row < base.numRows ? base.row(row) : null;
+            SparseVector frozenRow = frozen != null ? frozen.get(row) : null;
+            SparseVector activeRow = active.get(row);
+
+            int n = count(baseRow) + count(frozenRow) + count(activeRow);
+            int[] idx = new int[n];
+            double[] vals = new double[n];
+
+            // later segments win on duplicate indices
+            int k = copy(baseRow, idx, vals, 0);
+            k = copy(frozenRow, idx, vals, k);
+            copy(activeRow, idx, vals, k);
+
+            return nonZeros(new SparseVector(numColumns, idx, vals));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * get a col sparse vector of a matrix. The column structure of the base is required.
+     *
+     * @param col col id
+     * @return a sparse vector of {index, value}
+     */
+    public SparseVector column(int col) {
+        if (!isCCSUsed)
+            throw new UnsupportedOperationException("The base matrix has no column structure (CCS)");
+
+        lock.readLock().lock();
+        try {
+            SparseVector baseCol = col < base.numColumns ? base.column(col) : null;
+            SparseVector frozenCol = column(frozen, col);
+            SparseVector activeCol = column(active, col);
+
+            int n = count(baseCol) + count(frozenCol) + count(activeCol);
+            int[] idx = new int[n];
+            double[] vals = new double[n];
+
+            int k = copy(baseCol, idx, vals, 0);
+            k = copy(frozenCol, idx, vals, k);
+            copy(activeCol, idx, vals, k);
+
+            return nonZeros(new SparseVector(numRows, idx, vals));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compact the delta into the base now, and return the resulting base
+     *
+     * @return a snapshot of the matrix as a sparse matrix, which must not be modified
+     */
+    public SparseMatrix compact() {
+        synchronized (compactLock) {
+            SparseMatrix oldBase;
+            Map<Integer, SparseVector> delta;
+            int rows, cols;
+
+            lock.writeLock().lock();
+            try {
+                if (activeSize == 0)
+                    return base;
+
+                // freeze the active delta; new writes go to a fresh one
+                frozen = active;
+                active = new HashMap<Integer, SparseVector>();
+                activeSize = 0;
+
+                oldBase = base;
+                delta = frozen;
+                rows = numRows;
+                cols = numColumns;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // the frozen delta and the old base are immutable from here on
+            SparseMatrix newBase = merge(oldBase, delta, rows, cols);
+
+            lock.writeLock().lock();
+            try {
+                base = newBase;
+                frozen = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            return newBase;
+        }
+    }
+
+    /**
+     * Submit a compaction to the background thread unless one is pending already
+     */
+    private void scheduleCompact() {
+        if (!isCompactScheduled.compareAndSet(false, true))
+            return;
+
+        compactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                isCompactScheduled.set(false);
+                compact();
+            }
+        });
+    }
+
+    /**
+     * Merge the rows of a base matrix and a delta into a new CRS (plus CCS if used), with delta entries taking
+     * precedence
+     */
+    private SparseMatrix merge(SparseMatrix oldBase, Map<Integer, SparseVector> delta, int rows, int cols) {
+        int[] rowPtr = new int[rows + 1];
+
+        // first pass: size of each merged row
+        for (int i = 0; i < rows; i++) {
+            int start = i < oldBase.numRows ? oldBase.rowPtr[i] : 0;
+            int end = i < oldBase.numRows ? oldBase.rowPtr[i + 1] : 0;
+            SparseVector vec = delta.get(i);
+
+            int size = end - start + count(vec);
+            if (vec != null) {
+                // entries present in both are counted once
+                for (int j = start, l = 0; j < end && l < vec.count;) {
+                    int a = oldBase.colInd[j], b = vec.index[l];
+                    if (a < b)
+                        j++;
+                    else if (a > b)
+                        l++;
+                    else {
+                        size--;
+                        j++;
+                        l++;
+                    }
+                }
+            }
+
+            rowPtr[i + 1] = rowPtr[i] + size;
+        }
+
+        // second pass: merge the sorted rows
+        int nnz = rowPtr[rows];
+        int[] colInd = new int[nnz];
+        double[] rowData = new double[nnz];
+
+        for (int i = 0; i < rows; i++) {
+            int j = i < oldBase.numRows ? oldBase.rowPtr[i] : 0;
+            int end = i < oldBase.numRows ? oldBase.rowPtr[i + 1] : 0;
+            SparseVector vec = delta.get(i);
+            int l = 0, m = count(vec);
+
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                if (l >= m || (j < end && oldBase.colInd[j] < vec.index[l])) {
+                    colInd[k] = oldBase.colInd[j];
+                    rowData[k] = oldBase.rowData[j++];
+                } else {
+                    if (j < end && oldBase.colInd[j] == vec.index[l])
+                        j++;
+                    colInd[k] = vec.index[l];
+                    rowData[k] = vec.data[l++];
+                }
+            }
+        }
+
+        SparseMatrix mat = new SparseMatrix(rows, cols, rowPtr, colInd, rowData);
+        if (isCCSUsed)
+            mat.constructCCS();
+
+        return mat;
+    }
+
+    /**
+     * @return the entries of a column in a delta, or null if none
+     */
+    private SparseVector column(Map<Integer, SparseVector> delta, int col) {
+        if (delta == null)
+            return null;
+
+        // the rows of the map are unique but unordered, so sort the pairs once
+        int[] idx = null;
+        double[] vals = null;
+        int count = 0;
+        for (Map.Entry<Integer, SparseVector> en : delta.entrySet()) {
+            SparseVector vec = en.getValue();
+            if (vec.contains(col)) {
+                if (idx == null) {
+                    idx = new int[delta.size()];
+                    vals = new double[delta.size()];
+                }
+                idx[count] = en.getKey();
+                vals[count++] = vec.get(col);
+            }
+        }
+
+        if (idx == null)
+            return null;
+
+        IndexSorter.sort(idx, vals, 0, count, null, null);
+        return new SparseVector(Integer.MAX_VALUE, idx, vals, count);
+    }
+
+    private static int size(Map<Integer, SparseVector> delta) {
+        int size = 0;
+        if (delta != null)
+            for (SparseVector vec : delta.values())
+                size += vec.count;
+
+        return size;
+    }
+
+    private static int count(SparseVector vec) {
+        return vec == null ? 0 : vec.count;
+    }
+
+    private static int copy(SparseVector vec, int[] idx, double[] vals, int offset) {
+        if (vec == null)
+            return offset;
+
+        System.arraycopy(vec.index, 0, idx, offset, vec.count);
+        System.arraycopy(vec.data, 0, vals, offset, vec.count);
+
+        return offset + vec.count;
+    }
+
+    /**
+     * Drop entries that were overwritten with zero
+     */
+    private static SparseVector nonZeros(SparseVector vec) {
+        int k = 0;
+        for (int i = 0; i < vec.count; i++) {
+            if (vec.data[i] != 0) {
+                vec.index[k] = vec.index[i];
+                vec.data[k++] = vec.data[i];
+            }
+        }
+
+        return k == vec.count ? vec : new SparseVector(vec.capacity, vec.index, vec.data, k);
+    }
+}
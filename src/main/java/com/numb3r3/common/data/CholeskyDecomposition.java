@@ -0,0 +1,330 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+/**
+ * Cholesky decomposition {@code A = L * L^T} of a symmetric positive definite (SPD) dense matrix <br>
+ *
+ * The factorization is blocked: each diagonal block is factored in place, then the panel below it is solved and the
+ * trailing submatrix updated, the latter two in parallel for large matrices. All loops run along rows of the
+ * row-major storage. Once computed, the factor solves systems {@code A x = b} by two triangular solves, which is
+ * both cheaper and more accurate than forming {@code A^-1}. {@link #solveAll(DenseMatrix[], DenseVector[],
+ * DenseVector[])} solves many small systems in parallel without allocating per system.
+ * <p/>
+ * Only the lower triangle of {@code A} is read.
+ */
+public class CholeskyDecomposition {
+
+    // size of diagonal blocks
+    private static final int BLOCK_SIZE = 64;
+
+    // lower triangular factor
+    private final double[][] L;
+    private final int n;
+    private final boolean isSPD;
+
+    /**
+     * Decompose a square matrix
+     *
+     * @param mat a symmetric matrix; only its lower triangle is used
+     */
+    public CholeskyDecomposition(DenseMatrix mat) {
+        if (mat.numRows != mat.numColumns)
+            throw new RuntimeException("Matrix is not square");
+
+        n = mat.numRows;
+        L = new double[n][];
+        for (int i = 0; i < n; i++) {
+            L[i] = new double[n];
+            System.arraycopy(mat.data[i], 0, L[i], 0, i + 1);
+        }
+
+        isSPD = decompose(L, n);
+    }
+
+    /**
+     * @return whether the matrix is (numerically) symmetric positive definite; the other methods require it
+     */
+    public boolean isSPD() {
+        return isSPD;
+    }
+
+    /**
+     * @return a copy of the lower triangular factor {@code L}
+     */
+    public DenseMatrix getL() {
+        return new DenseMatrix(L);
+    }
+
+    /**
+     * @return the logarithm of the determinant of the matrix, i.e. {@code 2 * sum(log(L[i][i]))}
+     */
+    public double logDet() {
+        checkSPD();
+
+        double res = 0;
+        for (int i = 0; i < n; i++)
+            res += Math.log(L[i][i]);
+
+        return 2 * res;
+    }
+
+    /**
+     * Solve {@code A x = b}
+     *
+     * @param b right-hand side
+     * @return solution {@code x}
+     */
+    public DenseVector solve(DenseVector b) {
+        DenseVector x = new DenseVector(n);
+        solve(b, x);
+
+        return x;
+    }
+
+    /**
+     * Solve {@code A x = b} into a preallocated vector
+     *
+     * @param b right-hand side
+     * @param x output solution, which may be {@code b}
+     */
+    public void solve(DenseVector b, DenseVector x) {
+        assert b.size == n && x.size == n;
+        checkSPD();
+
+        if (x != b)
+            System.arraycopy(b.data, 0, x.data, 0, n);
+
+        solve(L, n, x.data);
+    }
+
+    /**
+     * Solve {@code A X = B} for all columns of {@code B} in parallel
+     *
+     * @param B right-hand sides
+     * @return solutions {@code X}
+     */
+    public DenseMatrix solve(DenseMatrix B) {
+        assert B.numRows == n;
+        checkSPD();
+
+        // solve on the rows of B^T, so that each right-hand side is contiguous
+        final DenseMatrix X = B.transpose();
+        int tasks = SparseMatrix.numTasks((long) X.numRows * n * n);
+        Parallel.blockingRanges(Parallel.split(0, X.numRows, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int j = from; j < to; j++)
+                    solve(L, n, X.data[j]);
+            }
+        });
+
+        return X.transpose();
+    }
+
+    /**
+     * Solve {@code L y = b} in place of {@code b}
+     */
+    public void solveL(double[] b) {
+        checkSPD();
+        forward(L, n, b);
+    }
+
+    /**
+     * Solve {@code L^T x = y} in place of {@code y}
+     */
+    public void solveLT(double[] y) {
+        checkSPD();
+        backward(L, n, y);
+    }
+
+    /**
+     * @return the inverse {@code A^-1}, whose rows (equal to its columns by symmetry) are solved in parallel
+     */
+    public DenseMatrix inverse() {
+        checkSPD();
+
+        final DenseMatrix inv = new DenseMatrix(n, n);
+        int tasks = SparseMatrix.numTasks((long) n * n * n);
+        Parallel.blockingRanges(Parallel.split(0, n, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int j = from; j < to; j++) {
+                    double[] row = inv.data[j];
+                    row[j] = 1.0;
+                    solve(L, n, row);
+                }
+            }
+        });
+
+        return inv;
+    }
+
+    /**
+     * Solve many small SPD systems {@code as[i] xs[i] = bs[i]} in parallel. Each range of systems is factored in a
+     * scratch space of its own, sized for its largest system, so no memory is allocated per system.
+     *
+     * @param as symmetric positive definite matrices; only their lower triangles are read and they are not modified
+     * @param bs right-hand sides
+     * @param xs output solutions, which may be the same vectors as {@code bs}
+     * @throws IllegalArgumentException if one of the matrices is not positive definite
+     */
+    public static void solveAll(final DenseMatrix[] as, final DenseVector[] bs, final DenseVector[] xs) {
+        assert as.length == bs.length && as.length == xs.length;
+
+        long work = 0;
+        for (DenseMatrix a : as)
+            work += (long) a.numRows * a.numRows * a.numRows / 3;
+
+        Parallel.blockingRanges(Parallel.split(0, as.length, SparseMatrix.numTasks(work)),
+                new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        int maxSize = 0;
+                        for (int s = from; s < to; s++)
+                            maxSize = Math.max(maxSize, as[s].numRows);
+                        double[][] l = new double[maxSize][maxSize];
+
+                        for (int s = from; s < to; s++) {
+                            DenseMatrix a = as[s];
+                            int k = a.numRows;
+
+                            for (int i = 0; i < k; i++)
+                                System.arraycopy(a.data[i], 0, l[i], 0, i + 1);
+
+                            if (!decompose(l, k))
+                                throw new IllegalArgumentException("Matrix " + s + " is not positive definite");
+
+                            if (xs[s] != bs[s])
+                                System.arraycopy(bs[s].data, 0, xs[s].data, 0, k);
+                            solve(l, k, xs[s].data);
+                        }
+                    }
+                });
+    }
+
+    private void checkSPD() {
+        if (!isSPD)
+            throw new RuntimeException("Matrix is not symmetric positive definite");
+    }
+
+    /**
+     * Blocked, right-looking Cholesky factorization of the leading {@code n x n} lower triangle of {@code a} in
+     * place. The strict upper triangle is cleared. This is also the kernel of
+     * {@link com.numb3r3.common.math.local.SPDDecomposition}.
+     *
+     * @return false if the matrix is not positive definite
+     */
+    public static boolean decompose(final double[][] a, final int n) {
+        for (int k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+            final int k1 = Math.min(k0 + BLOCK_SIZE, n);
+
+            // factor the diagonal block, to which all previous updates have been applied
+            for (int j = k0; j < k1; j++) {
+                double[] aj = a[j];
+
+                double d = aj[j];
+                for (int p = k0; p < j; p++)
+                    d -= aj[p] * aj[p];
+                if (!(d > 0))
+                    return false;
+                aj[j] = Math.sqrt(d);
+
+                for (int i = j + 1; i < k1; i++) {
+                    double[] ai = a[i];
+                    double sum = ai[j];
+                    for (int p = k0; p < j; p++)
+                        sum -= ai[p] * aj[p];
+                    ai[j] = sum / aj[j];
+                }
+            }
+
+            if (k1 == n)
+                break;
+
+            final int start = k0;
+            int tasks = SparseMatrix.numTasks((long) (n - k1) * (n - k1) * (k1 - k0));
+
+            // solve the panel below the diagonal block, and update the trailing submatrix with it
+            Parallel.blockingRanges(Parallel.split(k1, n, tasks), new Parallel.RangeOperation() {
+
+                @Override
+                public void perform(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        double[] ai = a[i];
+
+                        for (int j = start; j < k1; j++) {
+                            double[] aj = a[j];
+                            double sum = ai[j];
+                            for (int p = start; p < j; p++)
+                                sum -= ai[p] * aj[p];
+                            ai[j] = sum / aj[j];
+                        }
+                    }
+                }
+            });
+
+            Parallel.blockingRanges(Parallel.split(k1, n, tasks), new Parallel.RangeOperation() {
+
+                @Override
+                public void perform(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        double[] ai = a[i];
+
+                        for (int j = k1; j <= i; j++) {
+                            double[] aj = a[j];
+                            double sum = 0;
+                            for (int p = start; p < k1; p++)
+                                sum += ai[p] * aj[p];
+                            ai[j] -= sum;
+                        }
+                    }
+                }
+            });
+        }
+
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++)
+                a[i][j] = 0;
+
+        return true;
+    }
+
+    /**
+     * Solve {@code L L^T x = b} in place of {@code b}
+     */
+    static void solve(double[][] l, int n, double[] b) {
+        forward(l, n, b);
+        backward(l, n, b);
+    }
+
+    /**
+     * Forward substitution {@code L y = b}, in place
+     */
+    static void forward(double[][] l, int n, double[] b) {
+        for (int i = 0; i < n; i++) {
+            double[] li = l[i];
+            double sum = b[i];
+            for (int p = 0; p < i; p++)
+                sum -= li[p] * b[p];
+            b[i] = sum / li[i];
+        }
+    }
+
+    /**
+     * Back substitution {@code L^T x = y}, in place, in column-oriented form so that rows of {@code L} are read
+     * contiguously
+     */
+    static void backward(double[][] l, int n, double[] y) {
+        for (int i = n - 1; i >= 0; i--) {
+            double[] li = l[i];
+            double xi = y[i] / li[i];
+            y[i] = xi;
+            for (int p = 0; p < i; p++)
+                y[p] -= li[p] * xi;
+        }
+    }
+}
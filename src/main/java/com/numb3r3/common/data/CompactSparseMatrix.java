@@ -0,0 +1,417 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Data Structure: read-mostly sparse matrix in compressed CRS form <br>
+ *
+ * Compared with {@link SparseMatrix}, the column indices of each row are stored as variable-length (varint) deltas
+ * between consecutive columns, which takes one or two bytes per entry when the columns of a row are clustered, and
+ * the values may optionally be stored as {@code float}. Together this roughly halves the resident size of a cold or
+ * read-mostly matrix. Rows are decoded on the fly by the accessors and the multiplication kernels.
+ * <p/>
+ * The structure is fixed; values can be updated with {@link #set(int, int, double)} only at existing entries.
+ */
+public class CompactSparseMatrix {
+
+    // encoded rows are packed in pages of 2^PAGE_SHIFT bytes, and a row never straddles two pages
+    private static final int PAGE_SHIFT = 30;
+    private static final long PAGE_MASK = (1L << PAGE_SHIFT) - 1;
+
+    // matrix dimension
+    private final int numRows, numColumns;
+
+    // value pointers of rows, as in CRS
+    private final int[] rowPtr;
+
+    // byte positions (page << PAGE_SHIFT | offset) of the encoded column indices of rows
+    private final long[] rowPos;
+    private final byte[][] pages;
+
+    // values: exactly one of them is used
+    private final double[] doubleData;
+    private final float[] floatData;
+
+    private CompactSparseMatrix(int numRows, int numColumns, int[] rowPtr, long[] rowPos, byte[][] pages,
+                                double[] doubleData, float[] floatData) {
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.rowPtr = rowPtr;
+        this.rowPos = rowPos;
+        this.pages = pages;
+        this.doubleData = doubleData;
+        this.floatData = floatData;
+    }
+
+    /**
+     * Compress the CRS structure of a sparse matrix
+     *
+     * @param mat          a sparse matrix
+     * @param isFloatValue whether to store the values as {@code float}, losing precision beyond 24 bits
+     * @return a compressed copy of the matrix
+     */
+    public static CompactSparseMatrix compress(SparseMatrix mat, boolean isFloatValue) {
+        int numRows = mat.numRows;
+        int nnz = mat.rowPtr[numRows];
+
+        int[] rowPtr = Arrays.copyOf(mat.rowPtr, numRows + 1);
+        long[] rowPos = new long[numRows];
+
+        // first pass: lay out rows on pages
+        List<Integer> pageSizes = new ArrayList<Integer>();
+        long pageSize = 0;
+        for (int i = 0; i < numRows; i++) {
+            long size = 0;
+            for (int j = rowPtr[i], prev = 0; j < rowPtr[i + 1]; j++) {
+                size += varintSize(mat.colInd[j] - prev);
+                prev = mat.colInd[j];
+            }
+
+            if (size > PAGE_MASK + 1)
+                throw new IllegalArgumentException("Row " + i + " is too large to be compressed");
+            if (pageSize + size > PAGE_MASK + 1) {
+                pageSizes.add((int) pageSize);
+                pageSize = 0;
+            }
+            rowPos[i] = ((long) pageSizes.size() << PAGE_SHIFT) | pageSize;
+            pageSize += size;
+        }
+        pageSizes.add((int) pageSize);
+
+        byte[][] pages = new byte[pageSizes.size()][];
+        for (int p = 0; p < pages.length; p++)
+            pages[p] = new byte[pageSizes.get(p)];
+
+        // second pass: encode the column deltas
+        for (int i = 0; i < numRows; i++) {
+            byte[] page = pages[(int) (rowPos[i] >>> PAGE_SHIFT)];
+            int pos = (int) (rowPos[i] & PAGE_MASK);
+
+            for (int j = rowPtr[i], prev = 0; j < rowPtr[i + 1]; j++) {
+                int delta = mat.colInd[j] - prev;
+                prev = mat.colInd[j];
+
+                while ((delta & ~0x7F) != 0) {
+                    page[pos++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                page[pos++] = (byte) delta;
+            }
+        }
+
+        double[] doubleData = null;
+        float[] floatData = null;
+        if (isFloatValue) {
+            floatData = new float[nnz];
+            for (int j = 0; j < nnz; j++)
+                floatData[j] = (float) mat.rowData[j];
+        } else {
+            doubleData = Arrays.copyOf(mat.rowData, nnz);
+        }
+
+        return new CompactSparseMatrix(numRows, mat.numColumns, rowPtr, rowPos, pages, doubleData, floatData);
+    }
+
+    /**
+     * @return a sparse matrix with the decompressed CRS structure (CCS structure optional)
+     */
+    public SparseMatrix toSparseMatrix(boolean isCCSUsed) {
+        int nnz = rowPtr[numRows];
+        int[] colInd = new int[nnz];
+        double[] rowData = new double[nnz];
+
+        for (int i = 0; i < numRows; i++)
+            decode(i, colInd, rowPtr[i]);
+        for (int j = 0; j < nnz; j++)
+            rowData[j] = value(j);
+
+        SparseMatrix mat = new SparseMatrix(numRows, numColumns, Arrays.copyOf(rowPtr, numRows + 1), colInd, rowData);
+        if (isCCSUsed)
+            mat.constructCCS();
+
+        return mat;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return whether the values are stored as {@code float}
+     */
+    public boolean isFloatValue() {
+        return floatData != null;
+    }
+
+    /**
+     * @return approximate number of bytes used by the matrix arrays
+     */
+    public long memorySize() {
+        long size = 4L * rowPtr.length + 8L * rowPos.length;
+        for (byte[] page : pages)
+            size += page.length;
+        size += floatData != null ? 4L * floatData.length : 8L * doubleData.length;
+
+        return size;
+    }
+
+    /**
+     * Retrieve value at entry [row, column]
+     *
+     * @param row    row id
+     * @param column column id
+     * @return value at entry [row, column]
+     */
+    public double get(int row, int column) {
+        int j = find(row, column);
+
+        return j >= 0 ? value(j) : 0;
+    }
+
+    /**
+     * Set a value to an existing entry [row, column]
+     *
+     * @param row    row id
+     * @param column column id
+     * @param val    value to set
+     */
+    public void set(int row, int column, double val) {
+        int j = find(row, column);
+        if (j < 0)
+            throw new IndexOutOfBoundsException("Entry (" + (row + 1) + ", " + (column + 1)
+                    + ") is not in the matrix structure");
+
+        if (floatData != null)
+            floatData[j] = (float) val;
+        else
+            doubleData[j] = val;
+    }
+
+    /**
+     * get a row sparse vector of a matrix
+     *
+     * @param row row id
+     * @return a sparse vector of {index, value}
+     */
+    public SparseVector row(int row) {
+        if (row >= numRows) // return an empty vector if the row does not exist
+            return new SparseVector(numColumns);
+
+        int start = rowPtr[row], end = rowPtr[row + 1];
+        int[] cols = new int[end - start];
+        decode(row, cols, 0);
+
+        int[] idx = new int[end - start];
+        double[] vals = new double[end - start];
+
+        int count = 0;
+        for (int j = start; j < end; j++) {
+            double val = value(j);
+            if (val != 0.0) {
+                idx[count] = cols[j - start];
+                vals[count++] = val;
+            }
+        }
+
+        return new SparseVector(numColumns, idx, vals, count);
+    }
+
+    /**
+     * query the size of a specific row
+     *
+     * @param row row id
+     * @return the size of non-zero elements of a row
+     */
+    public int rowSize(int row) {
+        int size = 0;
+        for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++)
+            if (value(j) != 0.0)
+                size++;
+
+        return size;
+    }
+
+    /**
+     * Do {@code matrix x vector} between current matrix and a given dense vector
+     *
+     * @return a dense vector with the results of {@code matrix x vector}
+     */
+    public DenseVector mult(DenseVector vec) {
+        DenseVector res = new DenseVector(numRows);
+        mult(vec, res);
+
+        return res;
+    }
+
+    /**
+     * Do {@code matrix x vector} in parallel, decoding the rows on the fly and writing into a preallocated vector
+     *
+     * @param vec a dense vector of size {@code numColumns}
+     * @param res output vector of size {@code numRows}, which must not be {@code vec}
+     */
+    public void mult(final DenseVector vec, final DenseVector res) {
+        assert numColumns == vec.size;
+        assert numRows == res.size;
+
+        final double[] x = vec.data, y = res.data;
+        int[] bounds = SparseMatrix.partitionRows(rowPtr, numRows, SparseMatrix.numTasks(rowPtr[numRows]));
+
+        Parallel.blockingRanges(bounds, new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    byte[] page = pages[(int) (rowPos[i] >>> PAGE_SHIFT)];
+                    int pos = (int) (rowPos[i] & PAGE_MASK);
+
+                    double sum = 0;
+                    for (int j = rowPtr[i], end = rowPtr[i + 1], col = 0; j < end; j++) {
+                        // inline varint decoding
+                        int delta = 0, shift = 0;
+                        byte b;
+                        do {
+                            b = page[pos++];
+                            delta |= (b & 0x7F) << shift;
+                            shift += 7;
+                        } while (b < 0);
+                        col += delta;
+
+                        sum += value(j) * x[col];
+                    }
+
+                    y[i] = sum;
+                }
+            }
+        });
+    }
+
+    /**
+     * Matrix multiplication with a dense matrix
+     *
+     * @param mat a dense matrix
+     * @return a dense matrix with results of matrix multiplication
+     */
+    public DenseMatrix mult(DenseMatrix mat) {
+        DenseMatrix res = new DenseMatrix(numRows, mat.numColumns);
+        mult(mat, res);
+
+        return res;
+    }
+
+    /**
+     * Matrix multiplication with a dense matrix in parallel, decoding the rows on the fly and writing into a
+     * preallocated matrix
+     *
+     * @param mat a dense matrix with {@code numColumns} rows
+     * @param res output matrix of size {@code numRows x mat.numColumns}, which must not be {@code mat}
+     */
+    public void mult(final DenseMatrix mat, final DenseMatrix res) {
+        assert numColumns == mat.numRows;
+        assert numRows == res.numRows && mat.numColumns == res.numColumns;
+
+        final int k = mat.numColumns;
+        final double[][] b = mat.data, c = res.data;
+        int[] bounds = SparseMatrix.partitionRows(rowPtr, numRows,
+                SparseMatrix.numTasks((long) rowPtr[numRows] * k));
+
+        Parallel.blockingRanges(bounds, new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                int[] cols = new int[0];
+
+                for (int i = from; i < to; i++) {
+                    int start = rowPtr[i], size = rowPtr[i + 1] - start;
+                    if (cols.length < size)
+                        cols = new int[Math.max(size, 2 * cols.length)];
+                    decode(i, cols, 0);
+
+                    double[] ci = c[i];
+                    Arrays.fill(ci, 0, k, 0.0);
+
+                    for (int j = 0; j < size; j++) {
+                        double val = value(start + j);
+                        double[] bj = b[cols[j]];
+                        for (int l = 0; l < k; l++)
+                            ci[l] += val * bj[l];
+                    }
+                }
+            }
+        });
+    }
+
+    private double value(int j) {
+        return floatData != null ? floatData[j] : doubleData[j];
+    }
+
+    /**
+     * Decode the column indices of a row into {@code cols[offset, offset + rowSize)}
+     */
+    private void decode(int row, int[] cols, int offset) {
+        byte[] page = pages[(int) (rowPos[row] >>> PAGE_SHIFT)];
+        int pos = (int) (rowPos[row] & PAGE_MASK);
+
+        for (int j = rowPtr[row], end = rowPtr[row + 1], col = 0; j < end; j++) {
+            int delta = 0, shift = 0;
+            byte b;
+            do {
+                b = page[pos++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            col += delta;
+            cols[offset++] = col;
+        }
+    }
+
+    /**
+     * @return value position of entry [row, column], or -1 if it is not stored
+     */
+    private int find(int row, int column) {
+        byte[] page = pages[(int) (rowPos[row] >>> PAGE_SHIFT)];
+        int pos = (int) (rowPos[row] & PAGE_MASK);
+
+        for (int j = rowPtr[row], end = rowPtr[row + 1], col = 0; j < end; j++) {
+            int delta = 0, shift = 0;
+            byte b;
+            do {
+                b = page[pos++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            col += delta;
+            if (col == column)
+                return j;
+            if (col > column)
+                break;
+        }
+
+        return -1;
+    }
+
+    private static int varintSize(int val) {
+        int size = 1;
+        while ((val & ~0x7F) != 0) {
+            val >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+}
@@ -21,6 +21,7 @@ package com.numb3r3.common.data;
 
 
 
+import com.numb3r3.common.concurrent.Parallel;
 import com.numb3r3.common.math.stat.RandomUtil;
 
 import java.util.Arrays;
@@ -42,6 +43,9 @@ public class DenseMatrix {
     // read data
     protected double[][] data;
 
+    // tile sizes of the blocked multiplication: a panel of BLOCK_K x BLOCK_J doubles (512 KB) fits in L2 cache
+    private static final int BLOCK_K = 128, BLOCK_J = 512;
+
     /**
      * Construct a dense matrix with specified dimensions
      *
@@ -181,6 +185,31 @@ public class DenseMatrix {
         return vec;
     }
 
+    /**
+     * @param rowId
+     *            row id
+     * @return a zero-copy view of a row
+     */
+    public DenseVectorView rowView(int rowId) {
+        return new DenseVectorView(data, rowId, 0, 0, 1, numColumns);
+    }
+
+    /**
+     * @param column
+     *            column id
+     * @return a zero-copy view of a column
+     */
+    public DenseVectorView columnView(int column) {
+        return new DenseVectorView(data, 0, column, 1, 0, numRows);
+    }
+
+    /**
+     * @return a zero-copy view of the {@code numRows x numColumns} block with top-left entry [row, column]
+     */
+    public DenseMatrixView view(int row, int column, int numRows, int numColumns) {
+        return new DenseMatrixView(this, row, column, numRows, numColumns);
+    }
+
     /**
      * Compute mean of a column of the current matrix
      *
@@ -287,23 +316,121 @@ public class DenseMatrix {
      * @return a dense matrix with results of matrix multiplication
      */
     public DenseMatrix mult(DenseMatrix mat) {
+        DenseMatrix res = new DenseMatrix(this.numRows, mat.numColumns);
+        mult(mat, res);
+
+        return res;
+    }
+
+    /**
+     * Matrix multiplication with a dense matrix in parallel, writing into a preallocated matrix. <br/>
+     *
+     * The product is computed tile by tile: for a block of rows of the current matrix, a {@code BLOCK_K x BLOCK_J}
+     * panel of {@code mat} is reused by all rows while it is in cache, and the innermost loop streams along rows of
+     * both {@code mat} and the result instead of striding down the columns of {@code mat}. Row blocks run in the
+     * fork-join pool.
+     *
+     * @param mat
+     *            a dense matrix with {@code numColumns} rows
+     * @param res
+     *            output matrix of size {@code numRows x mat.numColumns}, which must be neither of the operands
+     */
+    public void mult(final DenseMatrix mat, final DenseMatrix res) {
         assert this.numColumns == mat.numRows;
+        assert res.numRows == this.numRows && res.numColumns == mat.numColumns;
+        assert res != this && res != mat;
 
-        DenseMatrix res = new DenseMatrix(this.numRows, mat.numColumns);
-        for (int i = 0; i < res.numRows; i++) {
-            for (int j = 0; j < res.numColumns; j++) {
+        final int n = mat.numColumns, l = this.numColumns;
+        final double[][] a = this.data, b = mat.data, c = res.data;
+
+        int tasks = SparseMatrix.numTasks((long) numRows * n * l);
+        Parallel.blockingRanges(Parallel.split(0, numRows, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++)
+                    Arrays.fill(c[i], 0.0);
 
-                double product = 0;
-                for (int k = 0; k < this.numColumns; k++)
-                    product += data[i][k] * mat.data[k][j];
+                for (int jj = 0; jj < n; jj += BLOCK_J) {
+                    int jend = Math.min(jj + BLOCK_J, n);
 
-                res.set(i, j, product);
+                    for (int kk = 0; kk < l; kk += BLOCK_K) {
+                        int kend = Math.min(kk + BLOCK_K, l);
+
+                        for (int i = from; i < to; i++) {
+                            double[] ai = a[i], ci = c[i];
+
+                            for (int k = kk; k < kend; k++) {
+                                double aik = ai[k];
+                                double[] bk = b[k];
+                                for (int j = jj; j < jend; j++)
+                                    ci[j] += aik * bk[j];
+                            }
+                        }
+                    }
+                }
             }
-        }
+        });
+    }
+
+    /**
+     * Transposed matrix multiplication with a dense matrix, i.e., {@code A^T x mat}
+     *
+     * @param mat
+     *            a dense matrix with {@code numRows} rows
+     * @return a dense matrix with results of matrix multiplication
+     */
+    public DenseMatrix transposeMult(DenseMatrix mat) {
+        DenseMatrix res = new DenseMatrix(this.numColumns, mat.numColumns);
+        transposeMult(mat, res);
 
         return res;
     }
 
+    /**
+     * Transposed matrix multiplication {@code A^T x mat} in parallel, writing into a preallocated matrix, without
+     * materializing the transpose. Each task owns a range of rows of the result, i.e., of columns of the current
+     * matrix, and accumulates into them the rows of {@code mat} weighted by that slice of each row of the current
+     * matrix.
+     *
+     * @param mat
+     *            a dense matrix with {@code numRows} rows
+     * @param res
+     *            output matrix of size {@code numColumns x mat.numColumns}, which must be neither of the operands
+     */
+    public void transposeMult(final DenseMatrix mat, final DenseMatrix res) {
+        assert this.numRows == mat.numRows;
+        assert res.numRows == this.numColumns && res.numColumns == mat.numColumns;
+        assert res != this && res != mat;
+
+        final int n = mat.numColumns;
+        final double[][] a = this.data, b = mat.data, c = res.data;
+
+        int tasks = SparseMatrix.numTasks((long) numRows * numColumns * n);
+        Parallel.blockingRanges(Parallel.split(0, numColumns, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int j = from; j < to; j++)
+                    Arrays.fill(c[j], 0.0);
+
+                for (int i = 0; i < numRows; i++) {
+                    double[] ai = a[i], bi = b[i];
+
+                    for (int j = from; j < to; j++) {
+                        double aij = ai[j];
+                        if (aij == 0)
+                            continue;
+
+                        double[] cj = c[j];
+                        for (int l = 0; l < n; l++)
+                            cj[l] += aij * bi[l];
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Matrix multiplication with a sparse matrix
      *
@@ -312,24 +439,50 @@ public class DenseMatrix {
      * @return a dense matrix with results of matrix multiplication
      */
     public DenseMatrix mult(SparseMatrix mat) {
-        assert this.numColumns == mat.numRows;
-
         DenseMatrix res = new DenseMatrix(this.numRows, mat.numColumns);
+        mult(this, mat, res);
 
-        for (int j = 0; j < res.numColumns; j++) {
-            SparseVector col = mat.column(j); // only one-time computation
+        return res;
+    }
 
-            for (int i = 0; i < res.numRows; i++) {
+    /**
+     * Matrix multiplication of a dense matrix by a sparse matrix in parallel, writing into a preallocated matrix. Each
+     * row of the result accumulates the rows of {@code sm} (CRS) weighted by the corresponding row of {@code dm}.
+     *
+     * @param dm
+     *            a dense matrix
+     * @param sm
+     *            a sparse matrix with {@code dm.numColumns} rows
+     * @param res
+     *            output matrix of size {@code dm.numRows x sm.numColumns}, which must not be {@code dm}
+     */
+    public static void mult(final DenseMatrix dm, final SparseMatrix sm, final DenseMatrix res) {
+        assert dm.numColumns == sm.numRows;
+        assert res.numRows == dm.numRows && res.numColumns == sm.numColumns;
 
-                double product = 0;
-                for (VectorEntry ve : col)
-                    product += data[i][ve.index()] * ve.get();
+        final int[] rowPtr = sm.rowPtr, colInd = sm.colInd;
+        final double[] rowData = sm.rowData;
 
-                res.set(i, j, product);
-            }
-        }
+        int tasks = SparseMatrix.numTasks((long) dm.numRows * rowPtr[sm.numRows]);
+        Parallel.blockingRanges(Parallel.split(0, dm.numRows, tasks), new Parallel.RangeOperation() {
 
-        return res;
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] ai = dm.data[i], ci = res.data[i];
+                    Arrays.fill(ci, 0.0);
+
+                    for (int k = 0; k < dm.numColumns; k++) {
+                        double a = ai[k];
+                        if (a == 0)
+                            continue;
+
+                        for (int j = rowPtr[k], end = rowPtr[k + 1]; j < end; j++)
+                            ci[colInd[j]] += a * rowData[j];
+                    }
+                }
+            }
+        });
     }
 
     /**
@@ -371,24 +524,7 @@ public class DenseMatrix {
      * @return a dense matrix with the results of matrix multiplication
      */
     public static DenseMatrix mult(SparseMatrix sm, DenseMatrix dm) {
-        assert sm.numColumns == dm.numRows;
-
-        DenseMatrix res = new DenseMatrix(sm.numRows, dm.numColumns);
-
-        for (int i = 0; i < res.numRows; i++) {
-            SparseVector row = sm.row(i);
-            for (int j = 0; j < res.numColumns; j++) {
-
-                double product = 0;
-                for (int k : row.getIndex())
-                    product += row.get(k) * dm.data[k][j];
-
-                res.set(i, j, product);
-            }
-        }
-
-        return res;
-
+        return sm.mult(dm);
     }
 
     /**
@@ -424,6 +560,48 @@ public class DenseMatrix {
         return mat;
     }
 
+    /**
+     * Scale the current matrix in place
+     *
+     * @return the current matrix
+     */
+    public DenseMatrix scaleInPlace(double val) {
+        for (int i = 0; i < numRows; i++) {
+            double[] row = data[i];
+            for (int j = 0; j < numColumns; j++)
+                row[j] *= val;
+        }
+
+        return this;
+    }
+
+    /**
+     * Do {@code A = A + alpha * B} matrix operation in place
+     *
+     * @return the current matrix
+     */
+    public DenseMatrix axpy(double alpha, DenseMatrix mat) {
+        assert numRows == mat.numRows;
+        assert numColumns == mat.numColumns;
+
+        for (int i = 0; i < numRows; i++) {
+            double[] a = data[i], b = mat.data[i];
+            for (int j = 0; j < numColumns; j++)
+                a[j] += alpha * b[j];
+        }
+
+        return this;
+    }
+
+    /**
+     * Do {@code A = A + B} matrix operation in place
+     *
+     * @return the current matrix
+     */
+    public DenseMatrix addInPlace(DenseMatrix mat) {
+        return axpy(1.0, mat);
+    }
+
     /**
      * Do {@code A + B} matrix operation
      *
@@ -527,29 +705,14 @@ public class DenseMatrix {
     }
 
     /**
-     * @return the Cholesky decomposition of the current matrix
+     * @return the Cholesky decomposition of the current matrix as an upper triangular matrix {@code U} such that
+     *         {@code A = U^T U}, or null if the matrix is not positive definite
+     * @see CholeskyDecomposition
      */
     public DenseMatrix cholesky() {
-        if (this.numRows != this.numColumns)
-            throw new RuntimeException("Matrix is not square");
-
-        int n = numRows;
-        DenseMatrix L = new DenseMatrix(n, n);
-
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j <= i; j++) {
-                double sum = 0.0;
-                for (int k = 0; k < j; k++)
-                    sum += L.get(i, k) * L.get(j, k);
-
-                double val = i == j ? Math.sqrt(data[i][i] - sum) : (data[i][j] - sum) / L.get(j, j);
-                L.set(i, j, val);
-            }
-            if (Double.isNaN(L.get(i, i)))
-                return null;
-        }
+        CholeskyDecomposition chol = new CholeskyDecomposition(this);
 
-        return L.transpose();
+        return chol.isSPD() ? chol.getL().transpose() : null;
     }
 
     /**
@@ -593,7 +756,8 @@ public class DenseMatrix {
      * Compute the inverse of a matrix by LU decomposition
      *
      * @return the inverse matrix of current matrix
-     * @deprecated use {@code inv} instead which is slightly faster
+     * @deprecated use {@code inv} instead which is slightly faster; for symmetric positive definite matrices, use
+     *             {@link CholeskyDecomposition} to solve systems without inverting at all
      */
     public DenseMatrix inverse() {
         if (numRows != numColumns)
@@ -691,7 +855,7 @@ public class DenseMatrix {
 
     /**
      * NOTE: this implementation (adopted from PREA package) is slightly faster than {@code inverse}, especailly when
-     * {@code numRows} is large.
+     * {@code numRows} is large. For symmetric positive definite matrices, {@link CholeskyDecomposition} is faster.
      *
      * @return the inverse matrix of current matrix
      */
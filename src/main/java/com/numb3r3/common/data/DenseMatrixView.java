@@ -0,0 +1,157 @@
+package com.numb3r3.common.data;
+
+/**
+ * Data Structure: a view of a rectangular block of a dense matrix <br>
+ *
+ * Entries are not copied; reads and writes go to the backing matrix. Rows and columns of the block are available as
+ * {@link DenseVectorView}s, which are zero-copy as well.
+ *
+ * @see DenseMatrix#view(int, int, int, int)
+ */
+public class DenseMatrixView {
+
+    // backing storage
+    protected final double[][] data;
+    // top-left corner of the block
+    protected final int row, column;
+    // dimension
+    protected final int numRows, numColumns;
+
+    /**
+     * Construct a view of a {@code numRows x numColumns} block of a matrix with top-left entry [row, column]
+     */
+    public DenseMatrixView(DenseMatrix mat, int row, int column, int numRows, int numColumns) {
+        this(mat.data, mat.numRows, mat.numColumns, row, column, numRows, numColumns);
+    }
+
+    DenseMatrixView(double[][] data, int dataRows, int dataColumns, int row, int column, int numRows,
+                    int numColumns) {
+        if (row < 0 || column < 0 || numRows < 0 || numColumns < 0 || row + numRows > dataRows
+                || column + numColumns > dataColumns)
+            throw new IndexOutOfBoundsException("Block [" + row + ", " + column + "] of " + numRows + " x "
+                    + numColumns + " exceeds a " + dataRows + " x " + dataColumns + " matrix");
+
+        this.data = data;
+        this.row = row;
+        this.column = column;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Get the value at entry [row, column] of the block
+     */
+    public double get(int row, int column) {
+        return data[this.row + row][this.column + column];
+    }
+
+    /**
+     * Set a value to entry [row, column] of the block
+     */
+    public void set(int row, int column, double val) {
+        data[this.row + row][this.column + column] = val;
+    }
+
+    /**
+     * Add a value to entry [row, column] of the block
+     */
+    public void add(int row, int column, double val) {
+        data[this.row + row][this.column + column] += val;
+    }
+
+    /**
+     * @return a view of a row of the block
+     */
+    public DenseVectorView rowView(int rowId) {
+        return new DenseVectorView(data, row + rowId, column, 0, 1, numColumns);
+    }
+
+    /**
+     * @return a view of a column of the block
+     */
+    public DenseVectorView columnView(int columnId) {
+        return new DenseVectorView(data, row, column + columnId, 1, 0, numRows);
+    }
+
+    /**
+     * @return a view of a sub-block of the block, relative to its top-left entry
+     */
+    public DenseMatrixView view(int row, int column, int numRows, int numColumns) {
+        if (row < 0 || column < 0 || row + numRows > this.numRows || column + numColumns > this.numColumns)
+            throw new IndexOutOfBoundsException("Sub-block exceeds the block");
+
+        return new DenseMatrixView(data, this.row + this.numRows, this.column + this.numColumns, this.row + row,
+                this.column + column, numRows, numColumns);
+    }
+
+    /**
+     * Scale all entries of the block in place
+     *
+     * @return the current view
+     */
+    public DenseMatrixView scaleInPlace(double val) {
+        for (int i = 0; i < numRows; i++) {
+            double[] r = data[row + i];
+            for (int j = column, end = column + numColumns; j < end; j++)
+                r[j] *= val;
+        }
+
+        return this;
+    }
+
+    /**
+     * Do {@code A = A + alpha * B} in place on the block
+     *
+     * @return the current view
+     */
+    public DenseMatrixView axpy(double alpha, DenseMatrixView mat) {
+        assert numRows == mat.numRows && numColumns == mat.numColumns;
+
+        for (int i = 0; i < numRows; i++) {
+            double[] a = data[row + i], b = mat.data[mat.row + i];
+            for (int j = 0, p = column, q = mat.column; j < numColumns; j++)
+                a[p++] += alpha * b[q++];
+        }
+
+        return this;
+    }
+
+    /**
+     * Do {@code A = A + B} in place on the block
+     *
+     * @return the current view
+     */
+    public DenseMatrixView addInPlace(DenseMatrixView mat) {
+        return axpy(1.0, mat);
+    }
+
+    /**
+     * @return a copy of the block as a dense matrix
+     */
+    public DenseMatrix toDenseMatrix() {
+        DenseMatrix mat = new DenseMatrix(numRows, numColumns);
+        for (int i = 0; i < numRows; i++)
+            System.arraycopy(data[row + i], column, mat.data[i], 0, numColumns);
+
+        return mat;
+    }
+
+    @Override
+    public String toString() {
+        return toDenseMatrix().toString();
+    }
+}
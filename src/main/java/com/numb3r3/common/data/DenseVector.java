@@ -217,6 +217,91 @@ public class DenseVector {
         return result;
     }
 
+    /**
+     * Add a value to all entries of current vector in place
+     *
+     * @return the current vector
+     */
+    public DenseVector addInPlace(double val) {
+        for (int i = 0; i < size; i++)
+            data[i] += val;
+
+        return this;
+    }
+
+    /**
+     * Scale all entries of current vector in place
+     *
+     * @return the current vector
+     */
+    public DenseVector scaleInPlace(double val) {
+        for (int i = 0; i < size; i++)
+            data[i] *= val;
+
+        return this;
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a + b}
+     *
+     * @return the current vector
+     */
+    public DenseVector addInPlace(DenseVector vec) {
+        return axpy(1.0, vec);
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a - b}
+     *
+     * @return the current vector
+     */
+    public DenseVector minusInPlace(DenseVector vec) {
+        return axpy(-1.0, vec);
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a + alpha * b}
+     *
+     * @return the current vector
+     */
+    public DenseVector axpy(double alpha, DenseVector vec) {
+        assert size == vec.size;
+
+        double[] b = vec.data;
+        for (int i = 0; i < size; i++)
+            data[i] += alpha * b[i];
+
+        return this;
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a + alpha * b}
+     *
+     * @return the current vector
+     */
+    public DenseVector axpy(double alpha, DenseVectorView vec) {
+        assert size == vec.size;
+
+        for (int i = 0; i < size; i++)
+            data[i] += alpha * vec.get(i);
+
+        return this;
+    }
+
+    /**
+     * @return a zero-copy view of the whole vector
+     */
+    public DenseVectorView view() {
+        return view(0, size);
+    }
+
+    /**
+     * @return a zero-copy view of {@code length} entries starting at entry [from]
+     */
+    public DenseVectorView view(int from, int length) {
+        return new DenseVectorView(new double[][] { data }, 0, from, 0, 1, length);
+    }
+
     /**
      * Do vector operation: {@code a^t * b}
      *
@@ -225,9 +310,10 @@ public class DenseVector {
     public double inner(DenseVector vec) {
         assert size == vec.size;
 
+        double[] b = vec.data;
         double result = 0;
-        for (int i = 0; i < vec.size; i++)
-            result += get(i) * vec.get(i);
+        for (int i = 0; i < size; i++)
+            result += data[i] * b[i];
 
         return result;
     }
@@ -237,12 +323,17 @@ public class DenseVector {
      *
      * @return the inner product of two vectors
      */
-    public double inner(SparseVector vec) {
-        double result = 0;
-        for (int j : vec.getIndex())
-            result += vec.get(j) * get(j);
+    public double inner(DenseVectorView vec) {
+        return vec.inner(this);
+    }
 
-        return result;
+    /**
+     * Do vector operation: {@code a^t * b}
+     *
+     * @return the inner product of two vectors
+     */
+    public double inner(SparseVector vec) {
+        return vec.inner(this);
     }
 
     /**
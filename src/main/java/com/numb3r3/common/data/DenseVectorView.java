@@ -0,0 +1,238 @@
+package com.numb3r3.common.data;
+
+/**
+ * Data Structure: a strided view of dense storage <br>
+ *
+ * A view does not copy: it addresses entry {@code i} as {@code data[row + i * rowStride][column + i * columnStride]} of
+ * the backing matrix (or vector) storage, so a row of a matrix has strides {@code (0, 1)} and a column has strides
+ * {@code (1, 0)}. Writes through a view change the backing storage, and changes of the storage are visible in the view.
+ * <p/>
+ * The in-place operations ({@link #axpy(double, DenseVectorView)}, {@link #addInPlace(DenseVectorView)},
+ * {@link #scaleInPlace(double)}) return the view itself for chaining and allocate nothing.
+ *
+ * @see DenseMatrix#rowView(int)
+ * @see DenseMatrix#columnView(int)
+ * @see DenseVector#view()
+ */
+public class DenseVectorView {
+
+    // backing storage
+    protected final double[][] data;
+    // position of the first entry, and steps between entries
+    protected final int row, column, rowStride, columnStride;
+    protected final int size;
+
+    /**
+     * Construct a view of {@code size} entries of a 2D array, starting at {@code data[row][column]}
+     *
+     * @param data         backing storage
+     * @param row          row of the first entry
+     * @param column       column of the first entry
+     * @param rowStride    row step between consecutive entries
+     * @param columnStride column step between consecutive entries
+     * @param size         number of entries
+     */
+    public DenseVectorView(double[][] data, int row, int column, int rowStride, int columnStride, int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Negative view size: " + size);
+        if (size > 0 && (row < 0 || column < 0 || row + (size - 1) * rowStride >= data.length
+                || column + (size - 1) * columnStride >= data[row + (size - 1) * rowStride].length))
+            throw new IndexOutOfBoundsException("View exceeds its backing storage");
+
+        this.data = data;
+        this.row = row;
+        this.column = column;
+        this.rowStride = rowStride;
+        this.columnStride = columnStride;
+        this.size = size;
+    }
+
+    /**
+     * @return number of entries of the view
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a value at entry [index]
+     */
+    public double get(int idx) {
+        return data[row + idx * rowStride][column + idx * columnStride];
+    }
+
+    /**
+     * Set a value to entry [index]
+     */
+    public void set(int idx, double val) {
+        data[row + idx * rowStride][column + idx * columnStride] = val;
+    }
+
+    /**
+     * Add a value to entry [index]
+     */
+    public void add(int idx, double val) {
+        data[row + idx * rowStride][column + idx * columnStride] += val;
+    }
+
+    /**
+     * @return whether the entries are consecutive in one row of the backing storage
+     */
+    public boolean isContiguous() {
+        return rowStride == 0 && columnStride == 1;
+    }
+
+    /**
+     * Do vector operation: {@code a^t * b}
+     *
+     * @return the inner product of two vectors
+     */
+    public double inner(DenseVectorView vec) {
+        assert size == vec.size;
+
+        double res = 0;
+        if (isContiguous() && vec.isContiguous()) {
+            double[] a = data[row], b = vec.data[vec.row];
+            for (int i = 0, p = column, q = vec.column; i < size; i++)
+                res += a[p++] * b[q++];
+        } else {
+            for (int i = 0; i < size; i++)
+                res += get(i) * vec.get(i);
+        }
+
+        return res;
+    }
+
+    /**
+     * Do vector operation: {@code a^t * b}
+     *
+     * @return the inner product of two vectors
+     */
+    public double inner(DenseVector vec) {
+        assert size == vec.size;
+
+        double[] b = vec.data;
+        double res = 0;
+        if (isContiguous()) {
+            double[] a = data[row];
+            for (int i = 0, p = column; i < size; i++)
+                res += a[p++] * b[i];
+        } else {
+            for (int i = 0; i < size; i++)
+                res += get(i) * b[i];
+        }
+
+        return res;
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a + alpha * b}
+     *
+     * @return the current view
+     */
+    public DenseVectorView axpy(double alpha, DenseVectorView vec) {
+        assert size == vec.size;
+
+        if (isContiguous() && vec.isContiguous()) {
+            double[] a = data[row], b = vec.data[vec.row];
+            for (int i = 0, p = column, q = vec.column; i < size; i++)
+                a[p++] += alpha * b[q++];
+        } else {
+            for (int i = 0; i < size; i++)
+                add(i, alpha * vec.get(i));
+        }
+
+        return this;
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a + alpha * b}
+     *
+     * @return the current view
+     */
+    public DenseVectorView axpy(double alpha, DenseVector vec) {
+        assert size == vec.size;
+
+        double[] b = vec.data;
+        if (isContiguous()) {
+            double[] a = data[row];
+            for (int i = 0, p = column; i < size; i++)
+                a[p++] += alpha * b[i];
+        } else {
+            for (int i = 0; i < size; i++)
+                add(i, alpha * b[i]);
+        }
+
+        return this;
+    }
+
+    /**
+     * Do vector operation in place: {@code a = a + b}
+     *
+     * @return the current view
+     */
+    public DenseVectorView addInPlace(DenseVectorView vec) {
+        return axpy(1.0, vec);
+    }
+
+    /**
+     * Add a value to all entries in place
+     *
+     * @return the current view
+     */
+    public DenseVectorView addInPlace(double val) {
+        for (int i = 0; i < size; i++)
+            add(i, val);
+
+        return this;
+    }
+
+    /**
+     * Scale all entries in place
+     *
+     * @return the current view
+     */
+    public DenseVectorView scaleInPlace(double val) {
+        for (int i = 0; i < size; i++)
+            data[row + i * rowStride][column + i * columnStride] *= val;
+
+        return this;
+    }
+
+    /**
+     * Copy the entries of a vector into the view
+     *
+     * @return the current view
+     */
+    public DenseVectorView assign(DenseVectorView vec) {
+        assert size == vec.size;
+
+        for (int i = 0; i < size; i++)
+            set(i, vec.get(i));
+
+        return this;
+    }
+
+    /**
+     * @return the sum of squared entries
+     */
+    public double squaredNorm() {
+        return inner(this);
+    }
+
+    /**
+     * @return a copy of the viewed entries as a dense vector
+     */
+    public DenseVector toDenseVector() {
+        DenseVector vec = new DenseVector(size);
+        for (int i = 0; i < size; i++)
+            vec.data[i] = get(i);
+
+        return vec;
+    }
+
+    @Override
+    public String toString() {
+        return toDenseVector().toString();
+    }
+}
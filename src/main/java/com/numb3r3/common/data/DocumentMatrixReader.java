@@ -0,0 +1,463 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming, multi-threaded reader of document-word count matrices in one of two text formats:
+ * <ul>
+ * <li>{@code "normal"}: one row per line, holding the whitespace-separated counts of its columns;</li>
+ * <li>{@code "special"}: two lines per row, the number of distinct words of the document, then its pairs of word id
+ * and count, written either as {@code word count} or as {@code word:count}.</li>
+ * </ul>
+ * The file is read sequentially in blocks of whole rows. A batch of blocks, one per core, is then parsed in parallel
+ * straight from the bytes, so that no {@code String} is allocated per line or token. The matrix is either filled in
+ * dense rows provided by the caller, or built as a {@link SparseMatrix} without the dense rows ever existing, which is
+ * what large corpora need.
+ * <p/>
+ * Counts are non-negative integers. A row of the special format with a wrong number of pairs, a word or column out of
+ * range, or more rows than expected raise an {@link IllegalArgumentException}.
+ */
+public class DocumentMatrixReader {
+
+    public static final String NORMAL = "normal";
+    public static final String SPECIAL = "special";
+
+    // initial number of bytes of a block; a block grows if a single row does not fit
+    private static final int BLOCK_SIZE = 1 << 22;
+
+    private final String file;
+    private final boolean special;
+    private final int numRows, numColumns;
+
+    /**
+     * @param file       path of the file
+     * @param fileType   {@link #NORMAL} or {@link #SPECIAL}, in any case
+     * @param numRows    number of rows of the matrix, at least the number of rows in the file
+     * @param numColumns number of columns of the matrix
+     */
+    public DocumentMatrixReader(String file, String fileType, int numRows, int numColumns) {
+        if (NORMAL.equalsIgnoreCase(fileType))
+            special = false;
+        else if (SPECIAL.equalsIgnoreCase(fileType))
+            special = true;
+        else
+            throw new IllegalArgumentException("Unknown matrix file type: " + fileType);
+
+        if (numRows < 0 || numColumns < 0)
+            throw new IllegalArgumentException("Invalid matrix dimension " + numRows + " x " + numColumns);
+
+        this.file = file;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+    }
+
+    /**
+     * Build a sparse matrix with only CRS structures. Zero counts are skipped as they are read: they are not stored,
+     * and in the special format they never override an earlier count of the same word. Otherwise a word repeated in a
+     * row keeps its last count.
+     */
+    public SparseMatrix readSparse() throws IOException {
+        SparseHandler handler = new SparseHandler();
+        read(handler);
+
+        // rows not in the file stay empty
+        int nnz = handler.nnz;
+        Arrays.fill(handler.rowPtr, handler.rows + 1, numRows + 1, nnz);
+
+        return new SparseMatrix(numRows, numColumns, handler.rowPtr, Arrays.copyOf(handler.colInd, nnz),
+                Arrays.copyOf(handler.rowData, nnz));
+    }
+
+    /**
+     * Read the counts into dense rows, which are expected to be zero initially.
+     *
+     * @param rows {@code numRows x numColumns} elements
+     */
+    public void readInto(final int[][] rows) throws IOException {
+        checkDense(rows.length, rows.length > 0 ? rows[0].length : numColumns);
+
+        final Sink sink = new Sink() {
+
+            @Override
+            void add(int row, int column, int value) {
+                rows[row][column] = value;
+            }
+        };
+
+        read(new Handler() {
+
+            @Override
+            Sink sink(int firstRow) {
+                return sink;
+            }
+        });
+    }
+
+    /**
+     * Read the counts into dense rows, which are expected to be zero initially.
+     *
+     * @param rows {@code numRows x numColumns} elements
+     */
+    public void readInto(final double[][] rows) throws IOException {
+        checkDense(rows.length, rows.length > 0 ? rows[0].length : numColumns);
+
+        final Sink sink = new Sink() {
+
+            @Override
+            void add(int row, int column, int value) {
+                rows[row][column] = value;
+            }
+        };
+
+        read(new Handler() {
+
+            @Override
+            Sink sink(int firstRow) {
+                return sink;
+            }
+        });
+    }
+
+    private void checkDense(int rows, int columns) {
+        if (rows != numRows || columns != numColumns)
+            throw new IllegalArgumentException("The rows should be " + numRows + " x " + numColumns);
+    }
+
+    /**
+     * Read the file batch by batch: fill up to one block per core with whole rows, parse the blocks in parallel, then
+     * hand them over in file order.
+     */
+    private void read(final Handler handler) throws IOException {
+        final Block[] blocks = new Block[Parallel.numCores()];
+        for (int b = 0; b < blocks.length; b++)
+            blocks[b] = new Block();
+
+        InputStream in = new FileInputStream(file);
+        try {
+            int firstRow = 0;
+            byte[] carry = new byte[0];
+            int carryLength = 0;
+            boolean eof = false;
+
+            while (!eof || carryLength > 0) {
+                int count = 0;
+                while (count < blocks.length && (!eof || carryLength > 0)) {
+                    Block block = blocks[count++];
+                    if (block.data.length < carryLength)
+                        block.data = new byte[carry.length];
+                    System.arraycopy(carry, 0, block.data, 0, carryLength);
+                    block.length = carryLength;
+
+                    int end;
+                    while (true) {
+                        eof = fill(in, block) < 0;
+                        end = block.scan(eof);
+                        if (end >= 0)
+                            break;
+
+                        block.data = Arrays.copyOf(block.data, block.data.length * 2);
+                    }
+
+                    carryLength = block.length - end;
+                    if (carry.length < carryLength)
+                        carry = new byte[block.data.length];
+                    System.arraycopy(block.data, end, carry, 0, carryLength);
+
+                    block.length = end;
+                    block.firstRow = firstRow;
+                    block.sink = handler.sink(firstRow);
+                    firstRow += block.rows;
+                }
+
+                Parallel.blockingRanges(Parallel.split(0, count, count), new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        for (int b = from; b < to; b++)
+                            parse(blocks[b]);
+                    }
+                });
+
+                for (int b = 0; b < count; b++)
+                    handler.finish(blocks[b]);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read from the stream until the block is full or the stream ends.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    private static int fill(InputStream in, Block block) throws IOException {
+        int total = 0;
+        while (block.length < block.data.length) {
+            int n = in.read(block.data, block.length, block.data.length - block.length);
+            if (n < 0)
+                return -1;
+
+            block.length += n;
+            total += n;
+        }
+
+        return total;
+    }
+
+    private void parse(Block block) {
+        byte[] data = block.data;
+        Sink sink = block.sink;
+        int pos = 0, end = block.length;
+
+        for (int row = block.firstRow; row < block.firstRow + block.rows; row++) {
+            if (row >= numRows)
+                throw new IllegalArgumentException("Matrix File Corrupted: more than " + numRows + " rows");
+
+            int eol = lineEnd(data, pos, end);
+
+            if (special) {
+                pos = nextToken(data, pos, eol);
+                if (pos == eol)
+                    throw corrupted(row, "missing number of words");
+
+                long token = parseInt(data, pos, eol, row);
+                int docWords = (int) token;
+                pos = eol + 1;
+                eol = lineEnd(data, Math.min(pos, end), end);
+
+                int pairs = 0;
+                for (pos = nextToken(data, pos, eol); pos < eol; pos = nextToken(data, pos, eol)) {
+                    token = parseInt(data, pos, eol, row);
+                    int word = (int) token;
+                    pos = nextToken(data, (int) (token >>> 32), eol);
+                    if (pos == eol)
+                        throw corrupted(row, "a word without count");
+
+                    token = parseInt(data, pos, eol, row);
+                    pos = (int) (token >>> 32);
+
+                    if (word >= numColumns)
+                        throw corrupted(row, "word " + word + " out of range");
+                    if ((int) token != 0)
+                        sink.add(row, word, (int) token);
+                    pairs++;
+                }
+
+                if (pairs != docWords)
+                    throw corrupted(row, docWords + " words expected, " + pairs + " found");
+            } else {
+                int column = 0;
+                for (pos = nextToken(data, pos, eol); pos < eol; pos = nextToken(data, pos, eol)) {
+                    long token = parseInt(data, pos, eol, row);
+                    pos = (int) (token >>> 32);
+
+                    if (column >= numColumns)
+                        throw corrupted(row, "more than " + numColumns + " columns");
+                    if ((int) token != 0)
+                        sink.add(row, column, (int) token);
+                    column++;
+                }
+            }
+
+            sink.endRow(row);
+            pos = eol + 1;
+        }
+    }
+
+    /**
+     * @return the position of the next line feed in {@code data[pos, end)}, or {@code end}
+     */
+    private static int lineEnd(byte[] data, int pos, int end) {
+        while (pos < end && data[pos] != '\n')
+            pos++;
+
+        return pos;
+    }
+
+    /**
+     * @return the position of the next token in {@code data[pos, end)}, or {@code end}
+     */
+    private static int nextToken(byte[] data, int pos, int end) {
+        while (pos < end) {
+            byte c = data[pos];
+            if (c != ' ' && c != '\t' && c != '\r' && c != ':')
+                break;
+            pos++;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Parse the non-negative integer starting at {@code pos}
+     *
+     * @return the value in the low 32 bits and the position after the token in the high 32 bits
+     */
+    private static long parseInt(byte[] data, int pos, int end, int row) {
+        long value = 0;
+        int start = pos;
+        for (; pos < end; pos++) {
+            int digit = data[pos] - '0';
+            if (digit < 0 || digit > 9)
+                break;
+
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE)
+                throw corrupted(row, "integer overflow");
+        }
+
+        if (pos == start || (pos < end && nextToken(data, pos, end) == pos))
+            throw corrupted(row, "not an integer");
+
+        return ((long) pos << 32) | value;
+    }
+
+    private static IllegalArgumentException corrupted(int row, String reason) {
+        return new IllegalArgumentException("Matrix File Corrupted at row " + row + ": " + reason);
+    }
+
+    /**
+     * Receives the entries of the rows of one block, in row order.
+     */
+    private abstract static class Sink {
+
+        abstract void add(int row, int column, int value);
+
+        void endRow(int row) {
+        }
+    }
+
+    private abstract static class Handler {
+
+        /**
+         * @return the sink of a block starting at the given row, called before parsing it
+         */
+        abstract Sink sink(int firstRow);
+
+        /**
+         * Called in file order once a block has been parsed
+         */
+        void finish(Block block) {
+        }
+    }
+
+    /**
+     * Appends the rows of the blocks to the CRS arrays of the matrix
+     */
+    private final class SparseHandler extends Handler {
+        final int[] rowPtr = new int[numRows + 1];
+        int[] colInd = new int[BLOCK_SIZE / 4];
+        double[] rowData = new double[BLOCK_SIZE / 4];
+        int nnz, rows;
+
+        @Override
+        Sink sink(int firstRow) {
+            return new RowCollector();
+        }
+
+        @Override
+        void finish(Block block) {
+            RowCollector rc = (RowCollector) block.sink;
+
+            if (nnz + rc.size > colInd.length) {
+                long grown = Math.max(nnz + rc.size, (long) colInd.length * 3 / 2);
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, grown);
+                colInd = Arrays.copyOf(colInd, capacity);
+                rowData = Arrays.copyOf(rowData, capacity);
+            }
+
+            System.arraycopy(rc.cols, 0, colInd, nnz, rc.size);
+            System.arraycopy(rc.vals, 0, rowData, nnz, rc.size);
+            for (int r = 0; r < rc.rows; r++)
+                rowPtr[rows + r + 1] = nnz + rc.rowPtr[r + 1];
+
+            nnz += rc.size;
+            rows += rc.rows;
+            block.sink = null;
+        }
+    }
+
+    /**
+     * Bytes of whole rows, starting with the row {@code firstRow}
+     */
+    private final class Block {
+        byte[] data = new byte[BLOCK_SIZE];
+        int length, firstRow, rows;
+        Sink sink;
+
+        /**
+         * Find the end of the last whole row in {@code data[0, length)}, and count the rows before it. At the end of
+         * the file, trailing bytes form a last row.
+         *
+         * @return the end of the rows, or -1 if there is no whole row
+         */
+        int scan(boolean eof) {
+            int linesPerRow = special ? 2 : 1;
+            int lines = 0, end = 0;
+
+            for (int i = 0; i < length; i++) {
+                if (data[i] == '\n' && ++lines % linesPerRow == 0)
+                    end = i + 1;
+            }
+
+            rows = lines / linesPerRow;
+            if (eof && end < length) {
+                rows++;
+                end = length;
+            }
+
+            return rows > 0 || eof ? end : -1;
+        }
+    }
+
+    /**
+     * Collects the rows of one block in CRS, each sorted by column without duplicates.
+     */
+    private static final class RowCollector extends Sink {
+        int[] rowPtr = new int[1025];
+        int[] cols = new int[4096];
+        double[] vals = new double[4096];
+        int size, rows;
+
+        private int[] idxBuf;
+        private double[] valBuf;
+
+        @Override
+        void add(int row, int column, int value) {
+            if (size == cols.length) {
+                cols = Arrays.copyOf(cols, size * 2);
+                vals = Arrays.copyOf(vals, size * 2);
+            }
+
+            cols[size] = column;
+            vals[size] = value;
+            size++;
+        }
+
+        @Override
+        void endRow(int row) {
+            int start = rowPtr[rows];
+
+            if (!IndexSorter.isStrictlySorted(cols, start, size)) {
+                int n = size - start;
+                if (idxBuf == null || idxBuf.length < n) {
+                    idxBuf = new int[n];
+                    valBuf = new double[n];
+                }
+
+                IndexSorter.sort(cols, vals, start, size, idxBuf, valBuf);
+                size = start + IndexSorter.dedupe(cols, vals, start, size, start);
+            }
+
+            if (rows + 1 == rowPtr.length - 1)
+                rowPtr = Arrays.copyOf(rowPtr, rowPtr.length * 2);
+            rowPtr[++rows] = size;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+/**
+ * Data Structure: dense matrix with single-precision storage <br>
+ *
+ * Stores its entries as {@code float[][]}, half the size of a {@link DenseMatrix}, for factors and other matrices
+ * whose values do not need double precision. All arithmetic is carried out in double precision, and only the stored
+ * values are rounded.
+ */
+public class FloatDenseMatrix {
+
+    // dimension
+    protected int numRows, numColumns;
+    // read data
+    protected float[][] data;
+
+    /**
+     * Construct a dense matrix with specified dimensions
+     *
+     * @param numRows    number of rows
+     * @param numColumns number of columns
+     */
+    public FloatDenseMatrix(int numRows, int numColumns) {
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+
+        data = new float[numRows][numColumns];
+    }
+
+    /**
+     * Construct a single-precision copy of a dense matrix
+     *
+     * @param mat input matrix
+     */
+    public FloatDenseMatrix(DenseMatrix mat) {
+        this(mat.numRows, mat.numColumns);
+
+        for (int i = 0; i < numRows; i++)
+            for (int j = 0; j < numColumns; j++)
+                data[i][j] = (float) mat.data[i][j];
+    }
+
+    /**
+     * @return a double-precision copy of current matrix
+     */
+    public DenseMatrix toDenseMatrix() {
+        DenseMatrix mat = new DenseMatrix(numRows, numColumns);
+
+        for (int i = 0; i < numRows; i++)
+            for (int j = 0; j < numColumns; j++)
+                mat.data[i][j] = data[i][j];
+
+        return mat;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Get the value at entry [row, column]
+     */
+    public double get(int row, int column) {
+        return data[row][column];
+    }
+
+    /**
+     * Set a value to entry [row, column]
+     */
+    public void set(int row, int column, double val) {
+        data[row][column] = (float) val;
+    }
+
+    /**
+     * Add a value to entry [row, column]
+     */
+    public void add(int row, int column, double val) {
+        data[row][column] += val;
+    }
+
+    /**
+     * @param rowId row id
+     * @return a double-precision copy of row data as a dense vector
+     */
+    public DenseVector row(int rowId) {
+        DenseVector vec = new DenseVector(numColumns);
+        float[] row = data[rowId];
+        for (int j = 0; j < numColumns; j++)
+            vec.data[j] = row[j];
+
+        return vec;
+    }
+
+    /**
+     * row x row of two matrix
+     *
+     * @return inner product of two row vectors
+     */
+    public static double rowMult(FloatDenseMatrix m, int mrow, FloatDenseMatrix n, int nrow) {
+        assert m.numColumns == n.numColumns;
+
+        float[] a = m.data[mrow], b = n.data[nrow];
+
+        double res = 0;
+        for (int j = 0; j < a.length; j++)
+            res += (double) a[j] * b[j];
+
+        return res;
+    }
+
+    /**
+     * Do {@code matrix x vector} between current matrix and a given vector
+     *
+     * @return a dense vector with the results of {@code matrix x vector}
+     */
+    public DenseVector mult(DenseVector vec) {
+        assert numColumns == vec.size;
+
+        final double[] x = vec.data;
+        final DenseVector res = new DenseVector(numRows);
+
+        int tasks = SparseMatrix.numTasks((long) numRows * numColumns);
+        Parallel.blockingRanges(Parallel.split(0, numRows, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] row = data[i];
+
+                    double sum = 0;
+                    for (int j = 0; j < numColumns; j++)
+                        sum += row[j] * x[j];
+
+                    res.data[i] = sum;
+                }
+            }
+        });
+
+        return res;
+    }
+
+    /**
+     * Matrix multiplication of a sparse matrix by a single-precision dense matrix
+     *
+     * @param sm
+     *            a sparse matrix
+     * @param fm
+     *            a dense matrix with {@code sm.numColumns} rows
+     * @return a dense matrix with the results of matrix multiplication
+     */
+    public static DenseMatrix mult(SparseMatrix sm, final FloatDenseMatrix fm) {
+        assert sm.numColumns == fm.numRows;
+
+        final int k = fm.numColumns;
+        final int[] rowPtr = sm.rowPtr, colInd = sm.colInd;
+        final double[] rowData = sm.rowData;
+        final DenseMatrix res = new DenseMatrix(sm.numRows, k);
+
+        int[] bounds = sm.partitionRows(SparseMatrix.numTasks((long) rowPtr[sm.numRows] * k));
+        Parallel.blockingRanges(bounds, new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] ci = res.data[i];
+
+                    for (int j = rowPtr[i]; j < rowPtr[i + 1]; j++) {
+                        double val = rowData[j];
+                        float[] bj = fm.data[colInd[j]];
+                        for (int l = 0; l < k; l++)
+                            ci[l] += val * bj[l];
+                    }
+                }
+            }
+        });
+
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return toDenseMatrix().toString();
+    }
+}
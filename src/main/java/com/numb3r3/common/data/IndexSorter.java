@@ -0,0 +1,119 @@
+package com.numb3r3.common.data;
+
+/**
+ * Stable in-place sorting of parallel {@code (int index, double value)} arrays, used by the sparse structures to
+ * order their entries without boxing them into objects.
+ */
+final class IndexSorter {
+
+    // segments shorter than this are sorted by insertion
+    private static final int INSERTION_THRESHOLD = 32;
+
+    private IndexSorter() {
+    }
+
+    /**
+     * @return true if {@code index[from, to)} is strictly increasing
+     */
+    static boolean isStrictlySorted(int[] index, int from, int to) {
+        for (int i = from + 1; i < to; i++)
+            if (index[i - 1] >= index[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Stable sort of {@code index[from, to)} in ascending order, permuting {@code data[from, to)} alongside.
+     *
+     * @param idxBuf scratch space of at least {@code to - from} entries, or null to allocate one if needed
+     * @param valBuf scratch space of at least {@code to - from} entries, or null to allocate one if needed
+     */
+    static void sort(int[] index, double[] data, int from, int to, int[] idxBuf, double[] valBuf) {
+        int n = to - from;
+        if (n < 2 || isStrictlySorted(index, from, to))
+            return;
+
+        if (n <= INSERTION_THRESHOLD) {
+            insertionSort(index, data, from, to);
+            return;
+        }
+
+        if (idxBuf == null || idxBuf.length < n)
+            idxBuf = new int[n];
+        if (valBuf == null || valBuf.length < n)
+            valBuf = new double[n];
+
+        mergeSort(index, data, from, to, idxBuf, valBuf);
+    }
+
+    /**
+     * Collapse runs of equal indices in the sorted segment {@code index[from, to)} into their last entry, moving the
+     * survivors to start at {@code dest}.
+     *
+     * @return the number of entries kept
+     */
+    static int dedupe(int[] index, double[] data, int from, int to, int dest) {
+        int k = dest;
+        for (int i = from; i < to; i++) {
+            if (i + 1 < to && index[i + 1] == index[i])
+                continue;
+
+            index[k] = index[i];
+            data[k] = data[i];
+            k++;
+        }
+
+        return k - dest;
+    }
+
+    private static void insertionSort(int[] index, double[] data, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int idx = index[i];
+            double val = data[i];
+
+            int j = i - 1;
+            while (j >= from && index[j] > idx) {
+                index[j + 1] = index[j];
+                data[j + 1] = data[j];
+                j--;
+            }
+            index[j + 1] = idx;
+            data[j + 1] = val;
+        }
+    }
+
+    private static void mergeSort(int[] index, double[] data, int from, int to, int[] idxBuf, double[] valBuf) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            insertionSort(index, data, from, to);
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(index, data, from, mid, idxBuf, valBuf);
+        mergeSort(index, data, mid, to, idxBuf, valBuf);
+
+        // already in order
+        if (index[mid - 1] <= index[mid])
+            return;
+
+        int n = mid - from;
+        System.arraycopy(index, from, idxBuf, 0, n);
+        System.arraycopy(data, from, valBuf, 0, n);
+
+        int i = 0, j = mid, k = from;
+        while (i < n && j < to) {
+            if (index[j] < idxBuf[i]) {
+                index[k] = index[j];
+                data[k++] = data[j++];
+            } else {
+                index[k] = idxBuf[i];
+                data[k++] = valBuf[i++];
+            }
+        }
+        while (i < n) {
+            index[k] = idxBuf[i];
+            data[k++] = valBuf[i++];
+        }
+    }
+}
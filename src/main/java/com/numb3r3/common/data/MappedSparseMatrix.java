@@ -0,0 +1,548 @@
+package com.numb3r3.common.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Data Structure: read-only sparse matrix backed by a memory-mapped file <br>
+ *
+ * The CRS (and optional CCS) arrays of a {@link SparseMatrix} are written to a binary file by
+ * {@link #write(SparseMatrix, File)} and mapped back by {@link #open(File)}. Opening a file costs no parsing and no
+ * heap, and several processes mapping the same file share its pages in the OS page cache. The query methods mirror
+ * those of {@code SparseMatrix}; use {@link #toSparseMatrix()} to load a modifiable copy on heap.
+ * <p/>
+ * File layout (big-endian): a 32-byte header {@code magic, version, numRows, numColumns, nnz, flags}, followed by
+ * {@code rowData}, {@code colData}, {@code rowPtr}, {@code colInd}, {@code colPtr} and {@code rowInd}, where the
+ * column sections are present only if the CCS flag is set.
+ */
+public class MappedSparseMatrix implements Iterable<MatrixEntry> {
+
+    private static final int MAGIC = 0x53504d58; // "SPMX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int FLAG_CCS = 1;
+
+    // number of elements per mapped region, keeping each region well below the 2 GB limit of a mapping
+    private static final int CHUNK_SHIFT = 27;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    // matrix dimension
+    private final int numRows, numColumns, nnz;
+
+    // Compressed Row Storage (CRS)
+    private final MappedDoubles rowData;
+    private final MappedInts rowPtr, colInd;
+
+    // Compressed Col Storage (CCS), null if not stored
+    private final MappedDoubles colData;
+    private final MappedInts colPtr, rowInd;
+
+    private MappedSparseMatrix(FileChannel channel, int numRows, int numColumns, int nnz, boolean isCCSUsed)
+            throws IOException {
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.nnz = nnz;
+
+        long pos = HEADER_SIZE;
+
+        rowData = new MappedDoubles(channel, pos, nnz);
+        pos += 8L * nnz;
+
+        if (isCCSUsed) {
+            colData = new MappedDoubles(channel, pos, nnz);
+            pos += 8L * nnz;
+        } else {
+            colData = null;
+        }
+
+        rowPtr = new MappedInts(channel, pos, numRows + 1);
+        pos += 4L * (numRows + 1);
+        colInd = new MappedInts(channel, pos, nnz);
+        pos += 4L * nnz;
+
+        if (isCCSUsed) {
+            colPtr = new MappedInts(channel, pos, numColumns + 1);
+            pos += 4L * (numColumns + 1);
+            rowInd = new MappedInts(channel, pos, nnz);
+        } else {
+            colPtr = null;
+            rowInd = null;
+        }
+    }
+
+    /**
+     * Write a sparse matrix to a file that can be mapped by {@link #open(File)}. The CCS structure is written if the
+     * matrix has one.
+     *
+     * @param mat  the sparse matrix to write
+     * @param file destination file, overwritten if it exists
+     */
+    public static void write(SparseMatrix mat, File file) throws IOException {
+        boolean isCCSUsed = mat.colPtr != null;
+        int nnz = mat.rowPtr[mat.numRows];
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+
+            buf.putInt(MAGIC).putInt(VERSION).putInt(mat.numRows).putInt(mat.numColumns).putInt(nnz)
+                    .putInt(isCCSUsed ? FLAG_CCS : 0);
+            while (buf.position() < HEADER_SIZE)
+                buf.put((byte) 0);
+
+            for (int j = 0; j < nnz; j++)
+                putDouble(channel, buf, mat.rowData[j]);
+
+            if (isCCSUsed) {
+                // take the values from CRS since entry updates through the iterator only reach the row data
+                for (int col = 0; col < mat.numColumns; col++)
+                    for (int j = mat.colPtr[col]; j < mat.colPtr[col + 1]; j++)
+                        putDouble(channel, buf, mat.get(mat.rowInd[j], col));
+            }
+
+            putInts(channel, buf, mat.rowPtr, mat.numRows + 1);
+            putInts(channel, buf, mat.colInd, nnz);
+
+            if (isCCSUsed) {
+                putInts(channel, buf, mat.colPtr, mat.numColumns + 1);
+                putInts(channel, buf, mat.rowInd, nnz);
+            }
+
+            flush(channel, buf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Map a file written by {@link #write(SparseMatrix, File)} as a read-only sparse matrix
+     *
+     * @param file the matrix file
+     * @return a matrix view over the mapped file
+     */
+    public static MappedSparseMatrix open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining())
+                if (channel.read(header) < 0)
+                    throw new IOException("Unexpected end of file in header of " + file);
+            header.flip();
+
+            if (header.getInt() != MAGIC)
+                throw new IOException(file + " is not a sparse matrix file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported sparse matrix file version " + version + " of " + file);
+
+            int rows = header.getInt(), cols = header.getInt(), nnz = header.getInt();
+            boolean isCCSUsed = (header.getInt() & FLAG_CCS) != 0;
+            if (rows < 0 || cols < 0 || nnz < 0)
+                throw new IOException("Corrupted header of sparse matrix file " + file + ": rows=" + rows + ", cols="
+                        + cols + ", nnz=" + nnz);
+
+            long expected = HEADER_SIZE + (isCCSUsed ? 2 : 1) * 12L * nnz + 4L * (rows + 1)
+                    + (isCCSUsed ? 4L * (cols + 1) : 0);
+            if (channel.size() < expected)
+                throw new IOException("Truncated sparse matrix file " + file + ": " + channel.size() + " < "
+                        + expected + " bytes");
+
+            // mappings remain valid after the channel is closed
+            return new MappedSparseMatrix(channel, rows, cols, nnz, isCCSUsed);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return a sparse matrix on heap with a copy of the mapped data
+     */
+    public SparseMatrix toSparseMatrix() {
+        int[] ptr = new int[numRows + 1];
+        int[] ind = new int[nnz];
+        double[] vals = new double[nnz];
+
+        for (int i = 0; i <= numRows; i++)
+            ptr[i] = rowPtr.get(i);
+        for (int j = 0; j < nnz; j++) {
+            ind[j] = colInd.get(j);
+            vals[j] = rowData.get(j);
+        }
+
+        SparseMatrix mat = new SparseMatrix(numRows, numColumns, ptr, ind, vals);
+        if (isCCSUsed())
+            mat.constructCCS();
+
+        return mat;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return whether the CCS structure is stored, as required by the column methods
+     */
+    public boolean isCCSUsed() {
+        return colPtr != null;
+    }
+
+    /**
+     * @return the cardinary of current matrix
+     */
+    public int size() {
+        int size = 0;
+        for (int j = 0; j < nnz; j++)
+            if (rowData.get(j) != 0)
+                size++;
+
+        return size;
+    }
+
+    /**
+     * Retrieve value at entry [row, column]
+     *
+     * @param row    row id
+     * @param column column id
+     * @return value at entry [row, column]
+     */
+    public double get(int row, int column) {
+        int index = binarySearch(colInd, rowPtr.get(row), rowPtr.get(row + 1), column);
+
+        return index >= 0 ? rowData.get(index) : 0;
+    }
+
+    /**
+     * get a row sparse vector of a matrix
+     *
+     * @param row row id
+     * @return a sparse vector of {index, value}
+     */
+    public SparseVector row(int row) {
+        if (row >= numRows) // return an empty vector if the row does not exist
+            return new SparseVector(numColumns);
+
+        return row(row, -1);
+    }
+
+    /**
+     * get a row sparse vector of a matrix
+     *
+     * @param row    row id
+     * @param except row id to be excluded
+     * @return a sparse vector of {index, value}
+     */
+    public SparseVector row(int row, int except) {
+        int start = rowPtr.get(row), end = rowPtr.get(row + 1);
+
+        int[] idx = new int[end - start];
+        double[] vals = new double[end - start];
+
+        int count = 0;
+        for (int j = start; j < end; j++) {
+            int col = colInd.get(j);
+            double val = rowData.get(j);
+            if (col != except && val != 0.0) {
+                idx[count] = col;
+                vals[count++] = val;
+            }
+        }
+
+        return new SparseVector(numColumns, idx, vals, count);
+    }
+
+    /**
+     * query the size of a specific row
+     *
+     * @param row row id
+     * @return the size of non-zero elements of a row
+     */
+    public int rowSize(int row) {
+        int size = 0;
+        for (int j = rowPtr.get(row), end = rowPtr.get(row + 1); j < end; j++)
+            if (rowData.get(j) != 0.0)
+                size++;
+
+        return size;
+    }
+
+    /**
+     * get columns of a specific row where (row, column) entries are non-zero
+     *
+     * @param row row id
+     * @return a list of column index
+     */
+    public List<Integer> getColumns(int row) {
+        List<Integer> res = new ArrayList<Integer>();
+
+        if (row < numRows) {
+            for (int j = rowPtr.get(row), end = rowPtr.get(row + 1); j < end; j++)
+                if (rowData.get(j) != 0.0)
+                    res.add(colInd.get(j));
+        }
+
+        return res;
+    }
+
+    /**
+     * get a col sparse vector of a matrix
+     *
+     * @param col col id
+     * @return a sparse vector of {index, value}
+     */
+    public SparseVector column(int col) {
+        checkCCS();
+
+        if (col >= numColumns) // return an empty vector if the column does not exist
+            return new SparseVector(numRows);
+
+        int start = colPtr.get(col), end = colPtr.get(col + 1);
+
+        int[] idx = new int[end - start];
+        double[] vals = new double[end - start];
+
+        int count = 0;
+        for (int j = start; j < end; j++) {
+            double val = colData.get(j);
+            if (val != 0.0) {
+                idx[count] = rowInd.get(j);
+                vals[count++] = val;
+            }
+        }
+
+        return new SparseVector(numRows, idx, vals, count);
+    }
+
+    /**
+     * query the size of a specific col
+     *
+     * @param col col id
+     * @return the size of non-zero elements of a column
+     */
+    public int columnSize(int col) {
+        checkCCS();
+
+        int size = 0;
+        for (int j = colPtr.get(col), end = colPtr.get(col + 1); j < end; j++)
+            if (colData.get(j) != 0.0)
+                size++;
+
+        return size;
+    }
+
+    /**
+     * get rows of a specific column where (row, column) entries are non-zero
+     *
+     * @param col column id
+     * @return a list of row index
+     */
+    public List<Integer> getRows(int col) {
+        checkCCS();
+
+        List<Integer> res = new ArrayList<Integer>();
+
+        if (col < numColumns) {
+            for (int j = colPtr.get(col), end = colPtr.get(col + 1); j < end; j++)
+                if (colData.get(j) != 0.0)
+                    res.add(rowInd.get(j));
+        }
+
+        return res;
+    }
+
+    /**
+     * Iterate over the stored entries row by row. The entries are read-only.
+     */
+    public Iterator<MatrixEntry> iterator() {
+        return new MatrixIterator();
+    }
+
+    private void checkCCS() {
+        if (colPtr == null)
+            throw new UnsupportedOperationException("The matrix file has no column structure (CCS)");
+    }
+
+    private static int binarySearch(MappedInts a, int from, int to, int key) {
+        int lo = from, hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int val = a.get(mid);
+            if (val < key)
+                lo = mid + 1;
+            else if (val > key)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+
+        return -(lo + 1);
+    }
+
+    private static void putDouble(FileChannel channel, ByteBuffer buf, double val) throws IOException {
+        if (buf.remaining() < 8)
+            flush(channel, buf);
+        buf.putDouble(val);
+    }
+
+    private static void putInts(FileChannel channel, ByteBuffer buf, int[] vals, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (buf.remaining() < 4)
+                flush(channel, buf);
+            buf.putInt(vals[i]);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            channel.write(buf);
+        buf.clear();
+    }
+
+    /**
+     * An array of doubles mapped in regions of at most {@code 2^CHUNK_SHIFT} elements
+     */
+    private static final class MappedDoubles {
+
+        private final DoubleBuffer[] chunks;
+
+        MappedDoubles(FileChannel channel, long offset, long length) throws IOException {
+            chunks = new DoubleBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long) c << CHUNK_SHIFT;
+                long size = Math.min(length - start, 1L << CHUNK_SHIFT);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + 8 * start, 8 * size).asDoubleBuffer();
+            }
+        }
+
+        double get(long i) {
+            return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+        }
+    }
+
+    /**
+     * An array of ints mapped in regions of at most {@code 2^CHUNK_SHIFT} elements
+     */
+    private static final class MappedInts {
+
+        private final IntBuffer[] chunks;
+
+        MappedInts(FileChannel channel, long offset, long length) throws IOException {
+            chunks = new IntBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long) c << CHUNK_SHIFT;
+                long size = Math.min(length - start, 1L << CHUNK_SHIFT);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + 4 * start, 4 * size).asIntBuffer();
+            }
+        }
+
+        int get(long i) {
+            return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+        }
+    }
+
+    /**
+     * Entry of a mapped matrix
+     */
+    private class MappedMatrixEntry implements MatrixEntry {
+
+        private int row, cursor;
+
+        public void update(int row, int cursor) {
+            this.row = row;
+            this.cursor = cursor;
+        }
+
+        public int row() {
+            return row;
+        }
+
+        public int column() {
+            return colInd.get(cursor);
+        }
+
+        public double get() {
+            return rowData.get(cursor);
+        }
+
+        public void set(double value) {
+            throw new UnsupportedOperationException("A mapped sparse matrix is read-only");
+        }
+    }
+
+    private class MatrixIterator implements Iterator<MatrixEntry> {
+
+        private int row, cursor, rowEnd;
+
+        private final MappedMatrixEntry entry = new MappedMatrixEntry();
+
+        public MatrixIterator() {
+            rowEnd = rowPtr.get(0);
+            nextNonEmptyRow();
+        }
+
+        /**
+         * Locates the first row at or after the current one that still has entries at the cursor
+         */
+        private void nextNonEmptyRow() {
+            while (cursor >= rowEnd && row < numRows) {
+                rowEnd = rowPtr.get(row + 1);
+                if (cursor < rowEnd)
+                    break;
+                row++;
+            }
+        }
+
+        public boolean hasNext() {
+            return cursor < nnz;
+        }
+
+        public MatrixEntry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            entry.update(row, cursor);
+
+            cursor++;
+            if (cursor >= rowEnd) {
+                row++;
+                nextNonEmptyRow();
+            }
+
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("A mapped sparse matrix is read-only");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedSparseMatrix[%d x %d, nnz=%d, ccs=%s]",
+                new Object[]{numRows, numColumns, nnz, isCCSUsed()});
+    }
+}
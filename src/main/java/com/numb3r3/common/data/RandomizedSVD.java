@@ -0,0 +1,583 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+import java.util.Random;
+
+/**
+ * Randomized truncated singular value decomposition {@code A ~ U S V^T} of a sparse or dense matrix, following the
+ * range finder of Halko, Martinsson and Tropp (2011). <br/>
+ *
+ * A Gaussian test matrix of {@code k + oversampling} columns is multiplied by {@code A}, sharpened by a number of power
+ * iterations {@code (A A^T)^q}, and orthonormalized into a basis {@code Q} of the dominant range of {@code A}. The
+ * small matrix {@code Q^T A} is then decomposed exactly. The matrix is only touched through the parallel products
+ * {@code A X} and {@code A^T Y} with tall dense matrices, {@code 2q + 2} of each kind; for a sparse matrix the second
+ * one gathers the columns of its CCS structure. A sparse matrix without one gets it built once, on a private copy
+ * sharing its CRS arrays, so that the matrix is never modified. Tall matrices are orthonormalized by CholeskyQR2,
+ * i.e., twice through the Cholesky factor of their small Gram matrix, so that they are read in a few parallel passes.
+ * <p/>
+ * With {@link #setCentered(boolean)}, the column means are subtracted implicitly (as rank-one corrections of the
+ * products, the matrix stays sparse): {@code V} then holds the principal axes of the rows and {@code U S} their
+ * principal components.
+ */
+public class RandomizedSVD {
+
+    private static final int DEFAULT_OVERSAMPLING = 10;
+    private static final int DEFAULT_POWER_ITERATIONS = 2;
+
+    // a column of a tall matrix whose squared residual, relative to its squared norm, falls below this tolerance after
+    // projecting out the previous columns is considered linearly dependent and dropped from the basis
+    private static final double DROP_TOLERANCE = 1e-12;
+
+    // convergence threshold and maximum number of sweeps of the one-sided Jacobi SVD
+    private static final double JACOBI_TOLERANCE = 1e-15;
+    private static final int MAX_SWEEPS = 60;
+
+    // rows of the Gaussian test matrix drawn from the same seed, so that it does not depend on the number of cores
+    private static final int RANDOM_BLOCK = 4096;
+
+    private final int rank;
+    private int oversampling = DEFAULT_OVERSAMPLING;
+    private int powerIterations = DEFAULT_POWER_ITERATIONS;
+    private boolean centered = false;
+    private long seed = new Random().nextLong();
+
+    // results
+    private DenseMatrix u, v;
+    private DenseVector s, mean;
+
+    /**
+     * @param rank number of singular triplets to compute
+     */
+    public RandomizedSVD(int rank) {
+        if (rank <= 0)
+            throw new IllegalArgumentException("rank=" + rank + ", which should be positive");
+
+        this.rank = rank;
+    }
+
+    /**
+     * @param oversampling number of extra random vectors in the range finder, 10 by default
+     */
+    public RandomizedSVD setOversampling(int oversampling) {
+        if (oversampling < 0)
+            throw new IllegalArgumentException("oversampling=" + oversampling + ", which should not be negative");
+
+        this.oversampling = oversampling;
+        return this;
+    }
+
+    /**
+     * @param powerIterations number of power iterations, 2 by default; more are needed when the singular values decay
+     *                        slowly
+     */
+    public RandomizedSVD setPowerIterations(int powerIterations) {
+        if (powerIterations < 0)
+            throw new IllegalArgumentException("powerIterations=" + powerIterations + ", which should not be negative");
+
+        this.powerIterations = powerIterations;
+        return this;
+    }
+
+    /**
+     * @param centered whether to decompose the matrix with its column means subtracted, i.e., PCA of its rows
+     */
+    public RandomizedSVD setCentered(boolean centered) {
+        this.centered = centered;
+        return this;
+    }
+
+    /**
+     * @param seed seed of the Gaussian test matrix, for reproducible results
+     */
+    public RandomizedSVD setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Decompose a sparse matrix. If it has no CCS structure, one is built for the duration of the decomposition,
+     * which takes as much memory again as the CRS structure.
+     *
+     * @return this decomposition, with the factors available through the getters
+     */
+    public RandomizedSVD decompose(SparseMatrix matrix) {
+        final SparseMatrix mat = matrix.withCCS();
+        Operator op = new Operator(mat.numRows, mat.numColumns) {
+
+            @Override
+            void multRaw(DenseMatrix x, DenseMatrix res) {
+                mat.mult(x, res);
+            }
+
+            @Override
+            void transposeMultRaw(DenseMatrix y, DenseMatrix res) {
+                mat.transposeMult(y, res);
+            }
+        };
+
+        if (centered) {
+            double[] mu = new double[mat.numColumns];
+            for (int k = 0, nnz = mat.rowPtr[mat.numRows]; k < nnz; k++)
+                mu[mat.colInd[k]] += mat.rowData[k];
+            for (int j = 0; j < mat.numColumns; j++)
+                mu[j] /= mat.numRows;
+            op.mean = mu;
+        }
+
+        decompose(op);
+        return this;
+    }
+
+    /**
+     * Decompose a dense matrix
+     *
+     * @return this decomposition, with the factors available through the getters
+     */
+    public RandomizedSVD decompose(final DenseMatrix mat) {
+        Operator op = new Operator(mat.numRows, mat.numColumns) {
+
+            @Override
+            void multRaw(DenseMatrix x, DenseMatrix res) {
+                mat.mult(x, res);
+            }
+
+            @Override
+            void transposeMultRaw(DenseMatrix y, DenseMatrix res) {
+                mat.transposeMult(y, res);
+            }
+        };
+
+        if (centered) {
+            double[] mu = weightedRowSum(mat, null);
+            for (int j = 0; j < mu.length; j++)
+                mu[j] /= mat.numRows;
+            op.mean = mu;
+        }
+
+        decompose(op);
+        return this;
+    }
+
+    /**
+     * @return the {@code numRows x rank} left singular vectors
+     */
+    public DenseMatrix getU() {
+        return u;
+    }
+
+    /**
+     * @return the {@code rank} singular values, in descending order
+     */
+    public DenseVector getSingularValues() {
+        return s;
+    }
+
+    /**
+     * @return the {@code numColumns x rank} right singular vectors
+     */
+    public DenseMatrix getV() {
+        return v;
+    }
+
+    /**
+     * @return the column means subtracted from the matrix, or null if it is not centered
+     */
+    public DenseVector getMean() {
+        return mean;
+    }
+
+    private void decompose(Operator op) {
+        int n = op.numRows, m = op.numColumns;
+        if (rank > Math.min(n, m))
+            throw new IllegalArgumentException("rank=" + rank + ", which exceeds the matrix dimension " + n + " x "
+                    + m);
+
+        int l = Math.min(rank + oversampling, Math.min(n, m));
+
+        // range finder with power iterations, orthonormalizing after every product to keep the columns apart
+        DenseMatrix y = new DenseMatrix(n, l), z = new DenseMatrix(m, l);
+        gaussian(z, seed);
+
+        op.mult(z, y);
+        orthonormalize(y);
+        for (int it = 0; it < powerIterations; it++) {
+            op.transposeMult(y, z);
+            orthonormalize(z);
+            op.mult(z, y);
+            orthonormalize(y);
+        }
+
+        // A^T Q = Z R and R = W S X^T, thus A ~ Q Q^T A = (Q X) S (Z W)^T
+        op.transposeMult(y, z);
+        double[][] r = orthonormalize(z);
+
+        double[][] w = r, x = new double[l][l];
+        double[] sigma = jacobiSVD(w, x);
+
+        int[] order = new int[l];
+        for (int j = 0; j < l; j++)
+            order[j] = j;
+        for (int j = 0; j < rank; j++) {
+            int max = j;
+            for (int p = j + 1; p < l; p++)
+                if (sigma[order[p]] > sigma[order[max]])
+                    max = p;
+
+            int tmp = order[j];
+            order[j] = order[max];
+            order[max] = tmp;
+        }
+
+        double[] sv = new double[rank];
+        for (int j = 0; j < rank; j++)
+            sv[j] = sigma[order[j]];
+
+        u = project(y, x, order);
+        v = project(z, w, order);
+        s = new DenseVector(sv);
+        mean = op.mean == null ? null : new DenseVector(op.mean);
+    }
+
+    /**
+     * Fill a matrix with standard Gaussian samples, in parallel over blocks of rows with one generator each
+     */
+    private static void gaussian(final DenseMatrix mat, final long seed) {
+        final int blocks = (mat.numRows + RANDOM_BLOCK - 1) / RANDOM_BLOCK;
+
+        Parallel.blockingRanges(Parallel.split(0, blocks, Parallel.numCores()), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int b = from; b < to; b++) {
+                    Random random = new Random(seed + b * 0x9E3779B97F4A7C15L);
+                    for (int i = b * RANDOM_BLOCK, end = Math.min(i + RANDOM_BLOCK, mat.numRows); i < end; i++) {
+                        double[] row = mat.data[i];
+                        for (int j = 0; j < row.length; j++)
+                            row[j] = random.nextGaussian();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Orthonormalize the columns of a tall matrix in place by CholeskyQR2, {@code Y = Q R}. Linearly dependent columns
+     * become zero columns of {@code Q}.
+     *
+     * @return the upper triangular factor {@code R}
+     */
+    static double[][] orthonormalize(DenseMatrix y) {
+        double[][] l1 = cholesky(gram(y));
+        solveRows(y, l1);
+
+        double[][] l2 = cholesky(gram(y));
+        solveRows(y, l2);
+
+        // R = R2 R1 = L2^T L1^T
+        int l = y.numColumns;
+        double[][] r = new double[l][l];
+        for (int i = 0; i < l; i++)
+            for (int j = i; j < l; j++) {
+                double sum = 0;
+                for (int p = i; p <= j; p++)
+                    sum += l2[p][i] * l1[j][p];
+                r[i][j] = sum;
+            }
+
+        return r;
+    }
+
+    /**
+     * @return the Gram matrix {@code Y^T Y} (lower triangle only), accumulated in parallel over blocks of rows
+     */
+    private static double[][] gram(final DenseMatrix y) {
+        final int l = y.numColumns;
+        final int[] bounds = Parallel.split(0, y.numRows, SparseMatrix.numTasks((long) y.numRows * l * l / 2));
+        final int blocks = bounds.length - 1;
+        final double[][][] partial = new double[blocks][][];
+
+        Parallel.blockingRanges(Parallel.split(0, blocks, blocks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int b = from; b < to; b++) {
+                    double[][] g = new double[l][l];
+                    for (int i = bounds[b]; i < bounds[b + 1]; i++) {
+                        double[] yi = y.data[i];
+                        for (int p = 0; p < l; p++) {
+                            double v = yi[p];
+                            if (v == 0)
+                                continue;
+
+                            double[] gp = g[p];
+                            for (int q = 0; q <= p; q++)
+                                gp[q] += v * yi[q];
+                        }
+                    }
+                    partial[b] = g;
+                }
+            }
+        });
+
+        double[][] g = partial[0];
+        for (int b = 1; b < blocks; b++)
+            for (int p = 0; p < l; p++)
+                for (int q = 0; q <= p; q++)
+                    g[p][q] += partial[b][p][q];
+
+        return g;
+    }
+
+    /**
+     * Cholesky factor {@code L} of a Gram matrix, {@code G = L L^T}. A column whose pivot is negligible w.r.t. its
+     * diagonal entry gets a zero pivot and zero entries below it.
+     */
+    private static double[][] cholesky(double[][] g) {
+        int l = g.length;
+        double[][] lower = new double[l][l];
+
+        for (int j = 0; j < l; j++) {
+            double[] lj = lower[j];
+
+            double d = g[j][j];
+            for (int p = 0; p < j; p++)
+                d -= lj[p] * lj[p];
+
+            if (!(d > g[j][j] * DROP_TOLERANCE))
+                continue;
+
+            double pivot = Math.sqrt(d);
+            lj[j] = pivot;
+
+            for (int i = j + 1; i < l; i++) {
+                double[] li = lower[i];
+                double sum = g[i][j];
+                for (int p = 0; p < j; p++)
+                    sum -= li[p] * lj[p];
+                li[j] = sum / pivot;
+            }
+        }
+
+        return lower;
+    }
+
+    /**
+     * Replace each row {@code y} of a matrix by the solution {@code x} of {@code x L^T = y}, in parallel over rows
+     */
+    private static void solveRows(final DenseMatrix y, final double[][] lower) {
+        final int l = y.numColumns;
+
+        int tasks = SparseMatrix.numTasks((long) y.numRows * l * l / 2);
+        Parallel.blockingRanges(Parallel.split(0, y.numRows, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] yi = y.data[i];
+
+                    for (int j = 0; j < l; j++) {
+                        double[] lj = lower[j];
+                        if (lj[j] == 0) {
+                            yi[j] = 0;
+                            continue;
+                        }
+
+                        double sum = yi[j];
+                        for (int p = 0; p < j; p++)
+                            sum -= yi[p] * lj[p];
+                        yi[j] = sum / lj[j];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * One-sided Jacobi SVD {@code A = W S X^T} of a small square matrix: plane rotations are applied to the columns
+     * of {@code A} until they are mutually orthogonal, and accumulated in {@code X}.
+     *
+     * @param a the matrix, replaced by {@code W} (a zero column for a zero singular value)
+     * @param x receives the right singular vectors as columns
+     * @return the (unsorted) singular values
+     */
+    private static double[] jacobiSVD(double[][] a, double[][] x) {
+        int l = a.length;
+        for (int i = 0; i < l; i++)
+            x[i][i] = 1.0;
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            boolean rotated = false;
+
+            for (int p = 0; p < l - 1; p++) {
+                for (int q = p + 1; q < l; q++) {
+                    double alpha = 0, beta = 0, gamma = 0;
+                    for (int i = 0; i < l; i++) {
+                        double ap = a[i][p], aq = a[i][q];
+                        alpha += ap * ap;
+                        beta += aq * aq;
+                        gamma += ap * aq;
+                    }
+
+                    if (Math.abs(gamma) <= JACOBI_TOLERANCE * Math.sqrt(alpha * beta))
+                        continue;
+                    rotated = true;
+
+                    double zeta = (beta - alpha) / (2 * gamma);
+                    double t = (zeta >= 0 ? 1.0 : -1.0) / (Math.abs(zeta) + Math.sqrt(1 + zeta * zeta));
+                    double c = 1.0 / Math.sqrt(1 + t * t), sn = c * t;
+
+                    rotate(a, p, q, c, sn);
+                    rotate(x, p, q, c, sn);
+                }
+            }
+
+            if (!rotated)
+                break;
+        }
+
+        double[] sigma = new double[l];
+        for (int j = 0; j < l; j++) {
+            double norm = 0;
+            for (int i = 0; i < l; i++)
+                norm += a[i][j] * a[i][j];
+            norm = Math.sqrt(norm);
+
+            sigma[j] = norm;
+            for (int i = 0; i < l; i++)
+                a[i][j] = norm > 0 ? a[i][j] / norm : 0;
+        }
+
+        return sigma;
+    }
+
+    private static void rotate(double[][] a, int p, int q, double c, double s) {
+        for (double[] row : a) {
+            double ap = row[p], aq = row[q];
+            row[p] = c * ap - s * aq;
+            row[q] = s * ap + c * aq;
+        }
+    }
+
+    /**
+     * @return {@code Q B}, where {@code B} holds the columns {@code order[0, rank)} of a small basis
+     */
+    private DenseMatrix project(final DenseMatrix q, final double[][] basis, final int[] order) {
+        final int l = q.numColumns;
+        final DenseMatrix res = new DenseMatrix(q.numRows, rank);
+
+        int tasks = SparseMatrix.numTasks((long) q.numRows * l * rank);
+        Parallel.blockingRanges(Parallel.split(0, q.numRows, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] qi = q.data[i], ri = res.data[i];
+                    for (int p = 0; p < l; p++) {
+                        double v = qi[p];
+                        if (v == 0)
+                            continue;
+
+                        double[] bp = basis[p];
+                        for (int c = 0; c < rank; c++)
+                            ri[c] += v * bp[order[c]];
+                    }
+                }
+            }
+        });
+
+        return res;
+    }
+
+    /**
+     * @return {@code sum_i w_i y_i} over the rows {@code y_i} of a matrix, with unit weights if {@code w} is null,
+     * accumulated in parallel over blocks of rows
+     */
+    private static double[] weightedRowSum(final DenseMatrix y, final double[] w) {
+        final int l = y.numColumns;
+        final int[] bounds = Parallel.split(0, y.numRows, SparseMatrix.numTasks((long) y.numRows * l));
+        final int blocks = bounds.length - 1;
+        final double[][] partial = new double[blocks][];
+
+        Parallel.blockingRanges(Parallel.split(0, blocks, blocks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int b = from; b < to; b++) {
+                    double[] sum = new double[l];
+                    for (int i = bounds[b]; i < bounds[b + 1]; i++) {
+                        double wi = w == null ? 1.0 : w[i];
+                        if (wi == 0)
+                            continue;
+
+                        double[] yi = y.data[i];
+                        for (int j = 0; j < l; j++)
+                            sum[j] += wi * yi[j];
+                    }
+                    partial[b] = sum;
+                }
+            }
+        });
+
+        double[] sum = partial[0];
+        for (int b = 1; b < blocks; b++)
+            for (int j = 0; j < l; j++)
+                sum[j] += partial[b][j];
+
+        return sum;
+    }
+
+    /**
+     * Subtract {@code w_i v} from each row {@code i} of a matrix, with unit weights if {@code w} is null
+     */
+    private static void subtractRows(final DenseMatrix res, final double[] w, final double[] v) {
+        int tasks = SparseMatrix.numTasks((long) res.numRows * v.length);
+        Parallel.blockingRanges(Parallel.split(0, res.numRows, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double wi = w == null ? 1.0 : w[i];
+                    double[] ri = res.data[i];
+                    for (int j = 0; j < v.length; j++)
+                        ri[j] -= wi * v[j];
+                }
+            }
+        });
+    }
+
+    /**
+     * Products of the decomposed matrix {@code A - 1 mean^T} with tall dense matrices
+     */
+    private abstract static class Operator {
+        final int numRows, numColumns;
+        double[] mean;
+
+        Operator(int numRows, int numColumns) {
+            this.numRows = numRows;
+            this.numColumns = numColumns;
+        }
+
+        abstract void multRaw(DenseMatrix x, DenseMatrix res);
+
+        abstract void transposeMultRaw(DenseMatrix y, DenseMatrix res);
+
+        /**
+         * {@code res = A x - 1 (mean^T x)}
+         */
+        void mult(DenseMatrix x, DenseMatrix res) {
+            multRaw(x, res);
+            if (mean != null)
+                subtractRows(res, null, weightedRowSum(x, mean));
+        }
+
+        /**
+         * {@code res = A^T y - mean (1^T y)}
+         */
+        void transposeMult(DenseMatrix y, DenseMatrix res) {
+            transposeMultRaw(y, res);
+            if (mean != null)
+                subtractRows(res, mean, weightedRowSum(y, null));
+        }
+    }
+}
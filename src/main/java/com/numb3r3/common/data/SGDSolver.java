@@ -0,0 +1,344 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+import java.util.Random;
+
+/**
+ * Parallel stochastic gradient descent (SGD) for matrix factorization {@code R ~ X Y^T} <br>
+ *
+ * For each observed entry {@code r(u,i)} of a sparse rating matrix, with error {@code e = r(u,i) - x_u . y_i}, the
+ * factors are updated in place as
+ *
+ * <pre>
+ *     x_u += eta * (e * y_i - lambda * x_u)
+ *     y_i += eta * (e * x_u - lambda * y_i)
+ * </pre>
+ *
+ * Entries are visited straight from the CRS arrays, in an order reshuffled every epoch, and no object is allocated
+ * per update. Two parallel schedules are available:
+ * <ul>
+ * <li>{@link Schedule#HOGWILD}: each thread owns a balanced range of rows and visits its entries in random order,
+ * updating the shared column factors without locks. Concurrent writes to the same column factor may occasionally
+ * overwrite each other, which SGD tolerates when the matrix is sparse (Niu et al., 2011).</li>
+ * <li>{@link Schedule#STRATIFIED}: rows and columns are split into {@code T x T} blocks; in each of {@code T}
+ * sub-epochs, thread {@code t} processes block {@code (t, t + s mod T)}, so that no two threads ever touch the same
+ * factor (Gemulla et al., 2011).</li>
+ * </ul>
+ * Each thread shuffles its own entries with its own random generator, seeded from the seed of the solver.
+ */
+public class SGDSolver {
+
+    /**
+     * Parallel schedules of the updates
+     */
+    public enum Schedule {
+        HOGWILD, STRATIFIED
+    }
+
+    /**
+     * Notified at the end of each epoch
+     */
+    public static interface EpochListener {
+        /**
+         * @param epoch zero-based index of the epoch
+         * @param loss  mean squared error of the entries, measured as they were visited during the epoch
+         */
+        public void epochDone(int epoch, double loss);
+    }
+
+    private final int numEpochs;
+    private double learningRate = 0.01;
+    private double lambda = 0.05;
+    private double decay = 1.0;
+    private Schedule schedule = Schedule.HOGWILD;
+    private int numThreads = Parallel.numCores();
+    private long seed = new Random().nextLong();
+    private EpochListener listener;
+
+    /**
+     * @param numEpochs number of passes over the entries
+     */
+    public SGDSolver(int numEpochs) {
+        if (numEpochs < 0)
+            throw new IllegalArgumentException("numEpochs=" + numEpochs + ", which should not be negative");
+
+        this.numEpochs = numEpochs;
+    }
+
+    /**
+     * @param learningRate initial learning rate {@code eta}, 0.01 by default
+     */
+    public SGDSolver setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+        return this;
+    }
+
+    /**
+     * @param lambda regularization parameter, 0.05 by default
+     */
+    public SGDSolver setLambda(double lambda) {
+        this.lambda = lambda;
+        return this;
+    }
+
+    /**
+     * @param decay factor applied to the learning rate after each epoch, 1 (no decay) by default
+     */
+    public SGDSolver setDecay(double decay) {
+        this.decay = decay;
+        return this;
+    }
+
+    public SGDSolver setSchedule(Schedule schedule) {
+        this.schedule = schedule;
+        return this;
+    }
+
+    /**
+     * @param numThreads number of parallel workers, the number of cores by default
+     */
+    public SGDSolver setNumThreads(int numThreads) {
+        if (numThreads <= 0)
+            throw new IllegalArgumentException("numThreads=" + numThreads + ", which should be positive");
+
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    /**
+     * @param seed seed of the random generators of the threads
+     */
+    public SGDSolver setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public SGDSolver setListener(EpochListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Train the factors, starting from their current values
+     *
+     * @param ratings       a sparse rating matrix
+     * @param rowFactors    factors of the rows (e.g., users), of size {@code numRows x k}, updated in place
+     * @param columnFactors factors of the columns (e.g., items), of size {@code numColumns x k}, updated in place
+     * @return the loss of each epoch, see {@link EpochListener#epochDone(int, double)}
+     */
+    public double[] train(SparseMatrix ratings, DenseMatrix rowFactors, DenseMatrix columnFactors) {
+        assert ratings.numRows == rowFactors.numRows;
+        assert ratings.numColumns == columnFactors.numRows;
+
+        if (rowFactors.numColumns != columnFactors.numColumns)
+            throw new IllegalArgumentException("Factor dimensions disagree: " + rowFactors.numColumns + " != "
+                    + columnFactors.numColumns);
+
+        Worker worker = new Worker(ratings, rowFactors, columnFactors);
+        int nnz = ratings.rowPtr[ratings.numRows];
+
+        double[] losses = new double[numEpochs];
+        double eta = learningRate;
+        for (int epoch = 0; epoch < numEpochs; epoch++) {
+            double sse = schedule == Schedule.HOGWILD ? worker.hogwildEpoch(eta) : worker.stratifiedEpoch(eta);
+            losses[epoch] = nnz > 0 ? sse / nnz : 0.0;
+
+            if (listener != null)
+                listener.epochDone(epoch, losses[epoch]);
+
+            eta *= decay;
+        }
+
+        return losses;
+    }
+
+    /**
+     * Entry permutations and random generators of the threads, set up once for all epochs
+     */
+    private final class Worker {
+        final int k;
+        final int[] colInd;
+        final double[] rowData;
+        final double[][] x, y;
+
+        // row of each entry of the CRS arrays
+        final int[] entryRow;
+        // entry indices, grouped by thread (HOGWILD) or by block (STRATIFIED), each group shuffled in place
+        final int[] perm;
+        // perm[groupPtr[g], groupPtr[g + 1]) is group g; block (t, c) is group t * threads + c
+        final int[] groupPtr;
+        final int threads;
+        final Random[] randoms;
+        final double[] partial;
+
+        Worker(SparseMatrix ratings, DenseMatrix rowFactors, DenseMatrix columnFactors) {
+            final int[] rowPtr = ratings.rowPtr;
+            final int numRows = ratings.numRows;
+            final int nnz = rowPtr[numRows];
+
+            this.k = rowFactors.numColumns;
+            this.colInd = ratings.colInd;
+            this.rowData = ratings.rowData;
+            this.x = rowFactors.data;
+            this.y = columnFactors.data;
+
+            // ranges of rows balanced by their number of entries
+            final int[] rowBounds = SparseMatrix.partitionRows(rowPtr, numRows, numThreads);
+            threads = rowBounds.length - 1;
+
+            randoms = new Random[threads];
+            for (int t = 0; t < threads; t++)
+                randoms[t] = new Random(seed + t * 0x9E3779B97F4A7C15L);
+            partial = new double[threads];
+
+            entryRow = new int[nnz];
+            perm = new int[nnz];
+
+            if (schedule == Schedule.HOGWILD) {
+                groupPtr = new int[threads + 1];
+                for (int t = 0; t <= threads; t++)
+                    groupPtr[t] = rowPtr[rowBounds[t]];
+
+                Parallel.blockingRanges(rowBounds, new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        for (int u = from; u < to; u++)
+                            for (int j = rowPtr[u]; j < rowPtr[u + 1]; j++) {
+                                entryRow[j] = u;
+                                perm[j] = j;
+                            }
+                    }
+                });
+            } else {
+                // ranges of columns balanced by their number of entries
+                int numColumns = ratings.numColumns;
+                int[] counts = new int[numColumns + 1];
+                for (int j = 0; j < nnz; j++)
+                    counts[colInd[j] + 1]++;
+                for (int c = 0; c < numColumns; c++)
+                    counts[c + 1] += counts[c];
+
+                int[] colBounds = SparseMatrix.partitionRows(counts, numColumns, threads);
+                final int[] colBlock = new int[numColumns];
+                for (int b = 0; b < colBounds.length - 1; b++)
+                    for (int c = colBounds[b]; c < colBounds[b + 1]; c++)
+                        colBlock[c] = b;
+
+                // counting sort of the entries by block, each row block counted and scattered by its own thread
+                final int[][] offsets = new int[threads][threads];
+                Parallel.blockingRanges(Parallel.split(0, threads, threads), new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        for (int t = from; t < to; t++)
+                            for (int j = rowPtr[rowBounds[t]]; j < rowPtr[rowBounds[t + 1]]; j++)
+                                offsets[t][colBlock[colInd[j]]]++;
+                    }
+                });
+
+                groupPtr = new int[threads * threads + 1];
+                int sum = 0;
+                for (int t = 0; t < threads; t++)
+                    for (int c = 0; c < threads; c++) {
+                        groupPtr[t * threads + c] = sum;
+                        int count = offsets[t][c];
+                        offsets[t][c] = sum;
+                        sum += count;
+                    }
+                groupPtr[threads * threads] = sum;
+
+                Parallel.blockingRanges(Parallel.split(0, threads, threads), new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        for (int t = from; t < to; t++) {
+                            int[] next = offsets[t];
+                            for (int u = rowBounds[t]; u < rowBounds[t + 1]; u++)
+                                for (int j = rowPtr[u]; j < rowPtr[u + 1]; j++) {
+                                    entryRow[j] = u;
+                                    perm[next[colBlock[colInd[j]]]++] = j;
+                                }
+                        }
+                    }
+                });
+            }
+        }
+
+        double hogwildEpoch(final double eta) {
+            Parallel.blockingRanges(Parallel.split(0, threads, threads), new Parallel.RangeOperation() {
+
+                @Override
+                public void perform(int from, int to) {
+                    for (int t = from; t < to; t++)
+                        partial[t] = update(groupPtr[t], groupPtr[t + 1], randoms[t], eta);
+                }
+            });
+
+            double sse = 0;
+            for (int t = 0; t < threads; t++)
+                sse += partial[t];
+
+            return sse;
+        }
+
+        double stratifiedEpoch(final double eta) {
+            double sse = 0;
+
+            for (int s = 0; s < threads; s++) {
+                final int shift = s;
+                Parallel.blockingRanges(Parallel.split(0, threads, threads), new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        for (int t = from; t < to; t++) {
+                            int g = t * threads + (t + shift) % threads;
+                            partial[t] = update(groupPtr[g], groupPtr[g + 1], randoms[t], eta);
+                        }
+                    }
+                });
+
+                for (int t = 0; t < threads; t++)
+                    sse += partial[t];
+            }
+
+            return sse;
+        }
+
+        /**
+         * Shuffle the entries {@code perm[from, to)} and apply their updates in that order
+         *
+         * @return sum of squared errors of the entries before their updates
+         */
+        double update(int from, int to, Random random, double eta) {
+            for (int j = to - 1; j > from; j--) {
+                int r = from + random.nextInt(j - from + 1);
+                int tmp = perm[j];
+                perm[j] = perm[r];
+                perm[r] = tmp;
+            }
+
+            double sse = 0;
+            for (int p = from; p < to; p++) {
+                int e = perm[p];
+                double[] xu = x[entryRow[e]], yi = y[colInd[e]];
+
+                double pred = 0;
+                for (int f = 0; f < k; f++)
+                    pred += xu[f] * yi[f];
+
+                double err = rowData[e] - pred;
+                sse += err * err;
+
+                for (int f = 0; f < k; f++) {
+                    double xf = xu[f], yf = yi[f];
+                    xu[f] += eta * (err * yf - lambda * xf);
+                    yi[f] += eta * (err * xf - lambda * yf);
+                }
+            }
+
+            return sse;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.numb3r3.common.data;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+/**
+ * Parallel top-K neighbor search over the rows (or columns) of a {@link SparseMatrix} <br>
+ *
+ * For each row {@code u}, the candidates are found through the inverted structure (CCS): every column {@code c} of
+ * {@code u} contributes {@code r(u,c) * r(v,c)} to each row {@code v} in that column. Only pairs that share at least
+ * one column are ever touched, instead of comparing all pairs of rows densely. The best {@code k} candidates of each
+ * row are kept in a bounded heap, and rows are processed in parallel, in one range per core balanced by the number of
+ * candidate pairs, each range with an accumulator of its own.
+ * <p/>
+ * The result is a square sparse matrix whose row {@code u} holds the similarities of the (at most) {@code k} nearest
+ * neighbors of {@code u}, excluding {@code u} itself.
+ */
+public class SimilaritySearch {
+
+    /**
+     * Similarity measures between two sparse vectors {@code x} and {@code y} of dimension {@code n}
+     */
+    public enum Measure {
+        /**
+         * {@code x.y / (|x| |y|)}
+         */
+        COSINE,
+        /**
+         * Pearson correlation over all {@code n} dimensions (absent entries count as zero), as computed by
+         * {@code Maths.pearson_correlation} on the dense vectors
+         */
+        PEARSON,
+        /**
+         * number of common non-zero entries over the size of the union of non-zero entries
+         */
+        JACCARD
+    }
+
+    /**
+     * Find the top-{@code k} most similar rows of each row of a matrix. If the matrix does not have a CCS structure, a
+     * temporary one is constructed; the matrix itself is not modified.
+     *
+     * @param mat     a sparse matrix
+     * @param measure similarity measure
+     * @param k       number of neighbors to keep per row
+     * @return a {@code numRows x numRows} sparse matrix of neighbor similarities
+     */
+    public static SparseMatrix topKRows(SparseMatrix mat, Measure measure, int k) {
+        mat = mat.withCCS();
+
+        return topK(mat.numRows, mat.numColumns, mat.rowPtr, mat.colInd, mat.rowData, mat.colPtr, mat.rowInd,
+                mat.colData, measure, k);
+    }
+
+    /**
+     * Find the top-{@code k} most similar columns of each column of a matrix. If the matrix does not have a CCS
+     * structure, a temporary one is constructed; the matrix itself is not modified.
+     *
+     * @param mat     a sparse matrix
+     * @param measure similarity measure
+     * @param k       number of neighbors to keep per column
+     * @return a {@code numColumns x numColumns} sparse matrix of neighbor similarities
+     */
+    public static SparseMatrix topKColumns(SparseMatrix mat, Measure measure, int k) {
+        mat = mat.withCCS();
+
+        return topK(mat.numColumns, mat.numRows, mat.colPtr, mat.rowInd, mat.colData, mat.rowPtr, mat.colInd,
+                mat.rowData, measure, k);
+    }
+
+    /**
+     * Top-k search over the vectors of a compressed structure {@code (ptr, ind, data)} with {@code n} vectors of
+     * dimension {@code dim}, using {@code (invPtr, invInd, invData)} as its inverted structure.
+     */
+    private static SparseMatrix topK(final int n, final int dim, final int[] ptr, final int[] ind,
+                                     final double[] data, final int[] invPtr, final int[] invInd,
+                                     final double[] invData, final Measure measure, final int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k should be positive: " + k);
+        if ((long) n * k > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many neighbors to keep: " + n + " x " + k);
+
+        // per-vector statistics: number of non-zeros, sum and sum of squares
+        final int[] counts = new int[n];
+        final double[] sums = new double[n], squares = new double[n];
+        for (int u = 0; u < n; u++) {
+            for (int j = ptr[u]; j < ptr[u + 1]; j++) {
+                double val = data[j];
+                if (val != 0) {
+                    counts[u]++;
+                    sums[u] += val;
+                    squares[u] += val * val;
+                }
+            }
+        }
+
+        // neighbors of vector u are kept in [u * k, u * k + found[u])
+        final int[] nbrInd = new int[n * k];
+        final double[] nbrVal = new double[n * k];
+        final int[] found = new int[n];
+
+        // cumulative number of candidate pairs, to balance the ranges
+        long[] work = new long[n + 1];
+        for (int u = 0; u < n; u++) {
+            long pairs = 1;
+            for (int j = ptr[u]; j < ptr[u + 1]; j++)
+                pairs += invPtr[ind[j] + 1] - invPtr[ind[j]];
+            work[u + 1] = work[u] + pairs;
+        }
+
+        Parallel.blockingRanges(partition(work, n, Parallel.numCores()),
+                new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        Accumulator acc = new Accumulator(n, k);
+
+                        for (int u = from; u < to; u++) {
+                            // accumulate over co-occurring vectors only
+                            for (int j = ptr[u]; j < ptr[u + 1]; j++) {
+                                double ru = data[j];
+                                if (ru == 0)
+                                    continue;
+
+                                int c = ind[j];
+                                for (int l = invPtr[c]; l < invPtr[c + 1]; l++) {
+                                    int v = invInd[l];
+                                    double rv = invData[l];
+                                    if (v == u || rv == 0)
+                                        continue;
+
+                                    acc.add(v, measure == Measure.JACCARD ? 1 : ru * rv);
+                                }
+                            }
+
+                            for (int t = 0; t < acc.numTouched; t++) {
+                                int v = acc.touched[t];
+                                double sim = similarity(measure, acc.values[v], u, v, dim, counts, sums, squares);
+                                if (!Double.isNaN(sim))
+                                    acc.heap.offer(v, sim);
+                            }
+
+                            found[u] = acc.heap.drainTo(nbrInd, nbrVal, u * k);
+                            acc.reset();
+                        }
+                    }
+                });
+
+        // compact into CRS, sorting the neighbors of each vector by index
+        int[] rowPtr = new int[n + 1];
+        for (int u = 0; u < n; u++)
+            rowPtr[u + 1] = rowPtr[u] + found[u];
+
+        int nnz = rowPtr[n];
+        int[] colInd = new int[nnz];
+        double[] rowData = new double[nnz];
+        for (int u = 0; u < n; u++) {
+            System.arraycopy(nbrInd, u * k, colInd, rowPtr[u], found[u]);
+            System.arraycopy(nbrVal, u * k, rowData, rowPtr[u], found[u]);
+            IndexSorter.sort(colInd, rowData, rowPtr[u], rowPtr[u + 1], null, null);
+        }
+
+        return new SparseMatrix(n, n, rowPtr, colInd, rowData);
+    }
+
+    /**
+     * Split {@code n} vectors into at most {@code parts} ranges of about the same work
+     *
+     * @param work cumulative work, {@code work[u]} being that of the vectors before {@code u}
+     * @return bounds of the ranges
+     */
+    private static int[] partition(long[] work, int n, int parts) {
+        parts = Math.max(1, Math.min(parts, n));
+
+        int[] bounds = new int[parts + 1];
+        bounds[parts] = n;
+
+        for (int r = 1; r < parts; r++) {
+            long target = work[n] / parts * r;
+
+            // smallest vector whose cumulative work reaches the target
+            int lo = bounds[r - 1], hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (work[mid] < target)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            bounds[r] = lo;
+        }
+
+        return bounds;
+    }
+
+    /**
+     * @param acc accumulated product (or co-occurrence count for Jaccard) of vectors {@code u} and {@code v}
+     */
+    private static double similarity(Measure measure, double acc, int u, int v, int dim, int[] counts,
+                                     double[] sums, double[] squares) {
+        switch (measure) {
+            case COSINE:
+                return acc / Math.sqrt(squares[u] * squares[v]);
+            case PEARSON:
+                double mu = sums[u] / dim, mv = sums[v] / dim;
+                double cov = acc / dim - mu * mv;
+                double varU = squares[u] / dim - mu * mu, varV = squares[v] / dim - mv * mv;
+                return cov / Math.sqrt(varU * varV);
+            case JACCARD:
+                return acc / (counts[u] + counts[v] - acc);
+            default:
+                throw new IllegalArgumentException("Unknown similarity measure: " + measure);
+        }
+    }
+
+    /**
+     * Dense accumulator of one range of vectors, with the list of touched entries so that it can be reset in time
+     * proportional to the number of candidates
+     */
+    private static class Accumulator {
+
+        final double[] values;
+        final boolean[] isTouched;
+        final int[] touched;
+        int numTouched;
+
+        final TopK heap;
+
+        Accumulator(int n, int k) {
+            values = new double[n];
+            isTouched = new boolean[n];
+            touched = new int[n];
+            heap = new TopK(k);
+        }
+
+        void add(int v, double val) {
+            if (!isTouched[v]) {
+                isTouched[v] = true;
+                touched[numTouched++] = v;
+            }
+            values[v] += val;
+        }
+
+        void reset() {
+            for (int t = 0; t < numTouched; t++) {
+                int v = touched[t];
+                values[v] = 0;
+                isTouched[v] = false;
+            }
+            numTouched = 0;
+        }
+    }
+
+    /**
+     * Bounded min-heap keeping the {@code k} highest scores, on primitive arrays
+     */
+    private static class TopK {
+
+        private final int[] ids;
+        private final double[] scores;
+        private int size;
+
+        TopK(int k) {
+            ids = new int[k];
+            scores = new double[k];
+        }
+
+        void offer(int id, double score) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Move the kept entries to {@code [offset, offset + size)} of the given arrays, and empty the heap
+         *
+         * @return number of entries moved
+         */
+        int drainTo(int[] toIds, double[] toScores, int offset) {
+            int n = size;
+            System.arraycopy(ids, 0, toIds, offset, n);
+            System.arraycopy(scores, 0, toScores, offset, n);
+            size = 0;
+
+            return n;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= scores[i])
+                    break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1, right = left + 1, min = i;
+                if (left < size && scores[left] < scores[min])
+                    min = left;
+                if (right < size && scores[right] < scores[min])
+                    min = right;
+                if (min == i)
+                    break;
+                swap(i, min);
+                i = min;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+    }
+}
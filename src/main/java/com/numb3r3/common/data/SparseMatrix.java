@@ -19,11 +19,11 @@ package com.numb3r3.common.data;
 //
 
 import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Table;
 import com.google.common.collect.Table.Cell;
 import com.numb3r3.common.MathUtil;
+import com.numb3r3.common.concurrent.Parallel;
 import com.numb3r3.common.math.Maths;
 
 import java.util.*;
@@ -41,6 +41,9 @@ import java.util.*;
  */
 public class SparseMatrix implements Iterable<MatrixEntry> {
 
+    // minimum number of multiply-adds worth running as a separate parallel task
+    static final int MIN_TASK_WORK = 1 << 15;
+
     // matrix dimension
     protected int numRows, numColumns;
 
@@ -72,23 +75,17 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
     /**
      * Construct a sparse matrix with CRS structures (CCS structure optional).
      *
-     * @deprecated I don't recommend to use this method as it (takes time and) is better to constructe the column
-     * structure at the time when you construct the row structure (of data table). This method is put here
-     * (as an example) to show how to construct column structure according to the data table.
+     * @deprecated use {@link SparseMatrixBuilder} instead, which avoids the boxed data table altogether. The column
+     * structure is derived from the row structure by a (parallel) counting sort.
      */
     public SparseMatrix(int rows, int cols, Table<Integer, Integer, Double> dataTable, boolean isCCSUsed) {
         numRows = rows;
         numColumns = cols;
 
-        Multimap<Integer, Integer> colMap = null;
-
-        if (isCCSUsed) {
-            colMap = HashMultimap.create();
-            for (Cell<Integer, Integer, Double> cell : dataTable.cellSet())
-                colMap.put(cell.getColumnKey(), cell.getRowKey());
-        }
+        construct(dataTable, null);
 
-        construct(dataTable, colMap);
+        if (isCCSUsed)
+            constructCCS();
     }
 
     /**
@@ -99,6 +96,20 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
         numColumns = cols;
     }
 
+    /**
+     * Construct a sparse matrix directly from its CRS arrays, used by {@code SparseMatrixBuilder} and
+     * {@code DocumentMatrixReader}. The arrays are taken as they are without copying, and column indices within each
+     * row must be sorted and unique.
+     */
+    SparseMatrix(int rows, int cols, int[] rowPtr, int[] colInd, double[] rowData) {
+        numRows = rows;
+        numColumns = cols;
+
+        this.rowPtr = rowPtr;
+        this.colInd = colInd;
+        this.rowData = rowData;
+    }
+
     /**
      * Construct a sparse matrix from another sparse matrix
      *
@@ -128,6 +139,9 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
     }
 
     private void copyCCS(double[] data, int[] ptr, int[] idx) {
+        // CCS structure is optional
+        if (ptr == null)
+            return;
 
         colData = new double[data.length];
         for (int i = 0; i < colData.length; i++)
@@ -150,13 +164,24 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
     }
 
     /**
-     * @return the transpose of current matrix
+     * @return the transpose of current matrix, which has a CCS structure if the current matrix has one
      */
     public SparseMatrix transpose() {
         SparseMatrix tr = new SparseMatrix(numColumns, numRows);
 
-        tr.copyCRS(this.rowData, this.rowPtr, this.colInd);
-        tr.copyCCS(this.colData, this.colPtr, this.rowInd);
+        int nnz = rowPtr[numRows];
+        tr.rowPtr = new int[numColumns + 1];
+        tr.colInd = new int[nnz];
+        tr.rowData = new double[nnz];
+
+        // the rows of the transpose are the columns of the current matrix, taken from the (up-to-date) CRS
+        transpose(numRows, numColumns, rowPtr, colInd, rowData, tr.rowPtr, tr.colInd, tr.rowData);
+
+        if (colPtr != null) {
+            tr.colPtr = Arrays.copyOf(rowPtr, numRows + 1);
+            tr.rowInd = Arrays.copyOf(colInd, nnz);
+            tr.colData = Arrays.copyOf(rowData, nnz);
+        }
 
         return tr;
     }
@@ -264,6 +289,101 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
         }
     }
 
+    /**
+     * Construct the CCS structure from the CRS structure by a counting sort over the column indices. Row indices
+     * within each column come out sorted since the rows are visited in order.
+     */
+    void constructCCS() {
+        int nnz = rowPtr[numRows];
+
+        colPtr = new int[numColumns + 1];
+        rowInd = new int[nnz];
+        colData = new double[nnz];
+
+        transpose(numRows, numColumns, rowPtr, colInd, rowData, colPtr, rowInd, colData);
+    }
+
+    /**
+     * @return this matrix if it has a CCS structure, or else a matrix sharing its CRS arrays with a CCS structure of
+     * its own, so that read-only kernels needing the CCS structure never modify a matrix that other threads may read
+     */
+    SparseMatrix withCCS() {
+        if (colPtr != null)
+            return this;
+
+        SparseMatrix mat = new SparseMatrix(numRows, numColumns, rowPtr, colInd, rowData);
+        mat.constructCCS();
+
+        return mat;
+    }
+
+    /**
+     * Transpose a compressed structure {@code (ptr, ind, vals)} of {@code n} vectors of dimension {@code dim} into
+     * {@code (tPtr, tInd, tVals)}, which have {@code dim + 1}, {@code nnz} and {@code nnz} entries. <br/>
+     *
+     * This is a two-pass counting sort run in parallel over blocks of vectors: each block counts its entries per
+     * output vector, prefix sums over (output vector, block) give every block its own write offsets, and then each
+     * block scatters its entries. Blocks are ordered, so the indices within every output vector come out sorted.
+     */
+    static void transpose(final int n, final int dim, final int[] ptr, final int[] ind, final double[] vals,
+                          final int[] tPtr, final int[] tInd, final double[] tVals) {
+        int nnz = ptr[n];
+
+        // one count array per block; keep their total size within that of the index array
+        int tasks = numTasks(nnz);
+        if (dim > 0)
+            tasks = (int) Math.max(1, Math.min(tasks, (long) nnz / dim));
+
+        final int[] bounds = partitionRows(ptr, n, tasks);
+        final int blocks = bounds.length - 1;
+        final int[][] offsets = new int[blocks][];
+
+        // first pass: count entries of each block per output vector
+        Parallel.blockingRanges(Parallel.split(0, blocks, blocks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int b = from; b < to; b++) {
+                    int[] counts = new int[dim];
+                    for (int j = ptr[bounds[b]]; j < ptr[bounds[b + 1]]; j++)
+                        counts[ind[j]]++;
+
+                    offsets[b] = counts;
+                }
+            }
+        });
+
+        // prefix sums: turn the counts into the write offset of each block in each output vector
+        int sum = 0;
+        for (int c = 0; c < dim; c++) {
+            tPtr[c] = sum;
+            for (int b = 0; b < blocks; b++) {
+                int count = offsets[b][c];
+                offsets[b][c] = sum;
+                sum += count;
+            }
+        }
+        tPtr[dim] = sum;
+
+        // second pass: scatter the entries of each block
+        Parallel.blockingRanges(Parallel.split(0, blocks, blocks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int b = from; b < to; b++) {
+                    int[] next = offsets[b];
+                    for (int i = bounds[b]; i < bounds[b + 1]; i++) {
+                        for (int j = ptr[i]; j < ptr[i + 1]; j++) {
+                            int k = next[ind[j]]++;
+                            tInd[k] = i;
+                            tVals[k] = vals[j];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * @return number of rows
      */
@@ -296,8 +416,10 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
         int index = getCRSIndex(row, column);
         rowData[index] = val;
 
-        index = getCCSIndex(row, column);
-        colData[index] = val;
+        if (colPtr != null) {
+            index = getCCSIndex(row, column);
+            colData[index] = val;
+        }
     }
 
     /**
@@ -311,8 +433,10 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
         int index = getCRSIndex(row, column);
         rowData[index] += val;
 
-        index = getCCSIndex(row, column);
-        colData[index] += val;
+        if (colPtr != null) {
+            index = getCCSIndex(row, column);
+            colData[index] += val;
+        }
     }
 
     /**
@@ -340,18 +464,10 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
      */
     public SparseVector row(int row) {
 
-        SparseVector sv = new SparseVector(numColumns);
+        if (row >= numRows) // return an empty vector if the row does not exist in training matrix
+            return new SparseVector(numColumns);
 
-        if (row < numRows) {
-            for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
-                int col = colInd[j];
-                double val = get(row, col);
-                if (val != 0.0)
-                    sv.set(col, val);
-            }
-        } // return an empty vector if the row does not exist in training matrix
-
-        return sv;
+        return rowVector(row, -1);
     }
 
     /**
@@ -385,17 +501,29 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
      */
     public SparseVector row(int row, int except) {
 
-        SparseVector sv = new SparseVector(numColumns);
+        return rowVector(row, except);
+    }
 
-        for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
+    /**
+     * Copy the non-zero entries of a row, except a given column, into a sparse vector in one shot
+     */
+    private SparseVector rowVector(int row, int except) {
+        int start = rowPtr[row], end = rowPtr[row + 1];
+
+        int[] idx = new int[end - start];
+        double[] vals = new double[end - start];
+
+        int count = 0;
+        for (int j = start; j < end; j++) {
             int col = colInd[j];
-            if (col != except) {
-                double val = get(row, col);
-                if (val != 0.0)
-                    sv.set(col, val);
+            double val = rowData[j];
+            if (col != except && val != 0.0) {
+                idx[count] = col;
+                vals[count++] = val;
             }
         }
-        return sv;
+
+        return new SparseVector(numColumns, idx, vals, count);
     }
 
     /**
@@ -443,18 +571,25 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
      */
     public SparseVector column(int col) {
 
-        SparseVector sv = new SparseVector(numRows);
+        if (col >= numColumns) // return an empty vector if the column does not exist in training matrix
+            return new SparseVector(numRows);
 
-        if (col < numColumns) {
-            for (int j = colPtr[col]; j < colPtr[col + 1]; j++) {
-                int row = rowInd[j];
-                double val = get(row, col);
-                if (val != 0.0)
-                    sv.set(row, val);
+        int start = colPtr[col], end = colPtr[col + 1];
+
+        int[] idx = new int[end - start];
+        double[] vals = new double[end - start];
+
+        int count = 0;
+        for (int j = start; j < end; j++) {
+            int row = rowInd[j];
+            double val = get(row, col);
+            if (val != 0.0) {
+                idx[count] = row;
+                vals[count++] = val;
             }
-        } // return an empty vector if the column does not exist in training matrix
+        }
 
-        return sv;
+        return new SparseVector(numRows, idx, vals, count);
     }
 
     /**
@@ -519,6 +654,181 @@ public class SparseMatrix implements Iterable<MatrixEntry> {
         return list;
     }
 
+    /**
+     * Split the rows into at most {@code parts} consecutive ranges of balanced work, where the work of a row is its
+     * number of stored entries plus one (for writing its output).
+     *
+     * @return range boundaries {@code b} such that range {@code r} is rows {@code [b[r], b[r+1])}
+     */
+    int[] partitionRows(int parts) {
+        return partitionRows(rowPtr, numRows, parts);
+    }
+
+    /**
+     * Split rows of a compressed structure by their pointers, as {@link #partitionRows(int)} does
+     */
+    static int[] partitionRows(int[] rowPtr, int numRows, int parts) {
+        parts = Math.max(1, Math.min(parts, numRows));
+
+        long total = (long) rowPtr[numRows] + numRows;
+        int[] bounds = new int[parts + 1];
+        bounds[parts] = numRows;
+
+        for (int r = 1; r < parts; r++) {
+            long target = total * r / parts;
+
+            // smallest row whose cumulative work reaches the target
+            int lo = bounds[r - 1], hi = numRows;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if ((long) rowPtr[mid] + mid < target)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            bounds[r] = lo;
+        }
+
+        return bounds;
+    }
+
+    /**
+     * @return the number of parallel tasks worth using for a kernel with the given number of multiply-adds
+     */
+    static int numTasks(long work) {
+        return (int) Math.max(1, Math.min(Parallel.numCores(), work / MIN_TASK_WORK));
+    }
+
+    /**
+     * Do {@code matrix x vector} between current matrix and a given dense vector
+     *
+     * @return a dense vector with the results of {@code matrix x vector}
+     */
+    public DenseVector mult(DenseVector vec) {
+        DenseVector res = new DenseVector(numRows);
+        mult(vec, res);
+
+        return res;
+    }
+
+    /**
+     * Do {@code matrix x vector} between current matrix and a given dense vector in parallel, writing into a
+     * preallocated vector. Rows are split across cores by their number of non-zero entries.
+     *
+     * @param vec a dense vector of size {@code numColumns}
+     * @param res output vector of size {@code numRows}, which must not be {@code vec}
+     */
+    public void mult(final DenseVector vec, final DenseVector res) {
+        assert numColumns == vec.size;
+        assert numRows == res.size;
+
+        final double[] x = vec.data, y = res.data;
+
+        Parallel.blockingRanges(partitionRows(numTasks(rowPtr[numRows])), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double sum = 0;
+                    for (int j = rowPtr[i], end = rowPtr[i + 1]; j < end; j++)
+                        sum += rowData[j] * x[colInd[j]];
+
+                    y[i] = sum;
+                }
+            }
+        });
+    }
+
+    /**
+     * Matrix multiplication with a dense matrix
+     *
+     * @param mat a dense matrix
+     * @return a dense matrix with results of matrix multiplication
+     */
+    public DenseMatrix mult(DenseMatrix mat) {
+        DenseMatrix res = new DenseMatrix(numRows, mat.numColumns);
+        mult(mat, res);
+
+        return res;
+    }
+
+    /**
+     * Matrix multiplication with a dense matrix in parallel, writing into a preallocated matrix. Rows are split across
+     * cores by their number of non-zero entries.
+     *
+     * @param mat a dense matrix with {@code numColumns} rows
+     * @param res output matrix of size {@code numRows x mat.numColumns}, which must not be {@code mat}
+     */
+    public void mult(final DenseMatrix mat, final DenseMatrix res) {
+        assert numColumns == mat.numRows;
+        assert numRows == res.numRows && mat.numColumns == res.numColumns;
+
+        mult(numRows, rowPtr, colInd, rowData, mat, res);
+    }
+
+    /**
+     * Transposed matrix multiplication with a dense matrix, i.e., {@code A^T x mat}
+     *
+     * @param mat a dense matrix with {@code numRows} rows
+     * @return a dense matrix with results of matrix multiplication
+     * @throws IllegalArgumentException if the matrix has no CCS structure
+     */
+    public DenseMatrix transposeMult(DenseMatrix mat) {
+        DenseMatrix res = new DenseMatrix(numColumns, mat.numColumns);
+        transposeMult(mat, res);
+
+        return res;
+    }
+
+    /**
+     * Transposed matrix multiplication {@code A^T x mat} with a dense matrix in parallel, writing into a preallocated
+     * matrix. Each row of the result gathers one column of the current matrix, which therefore must have a CCS
+     * structure (see {@link SparseMatrixBuilder#build(boolean)}). The current matrix is only read, and may be shared by
+     * several threads.
+     *
+     * @param mat a dense matrix with {@code numRows} rows
+     * @param res output matrix of size {@code numColumns x mat.numColumns}, which must not be {@code mat}
+     * @throws IllegalArgumentException if the matrix has no CCS structure
+     */
+    public void transposeMult(final DenseMatrix mat, final DenseMatrix res) {
+        assert numRows == mat.numRows;
+        assert numColumns == res.numRows && mat.numColumns == res.numColumns;
+
+        if (colPtr == null)
+            throw new IllegalArgumentException("The matrix has no CCS structure");
+
+        mult(numColumns, colPtr, rowInd, colData, mat, res);
+    }
+
+    /**
+     * Multiply the {@code n} vectors of a compressed structure {@code (ptr, ind, vals)} with a dense matrix in
+     * parallel, vector {@code i} giving row {@code i} of the result. Vectors are split across cores by their number of
+     * non-zero entries.
+     */
+    private static void mult(int n, final int[] ptr, final int[] ind, final double[] vals, DenseMatrix mat,
+                             DenseMatrix res) {
+        final int k = mat.numColumns;
+        final double[][] b = mat.data, c = res.data;
+
+        Parallel.blockingRanges(partitionRows(ptr, n, numTasks((long) ptr[n] * k)), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] ci = c[i];
+                    Arrays.fill(ci, 0, k, 0.0);
+
+                    for (int j = ptr[i], end = ptr[i + 1]; j < end; j++) {
+                        double val = vals[j];
+                        double[] bj = b[ind[j]];
+                        for (int l = 0; l < k; l++)
+                            ci[l] += val * bj[l];
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * @return sum of matrix data
      */
@@ -0,0 +1,170 @@
+package com.numb3r3.common.data;
+
+import java.util.Arrays;
+
+/**
+ * Streaming builder of a {@link SparseMatrix}. Entries are collected as primitive {@code (row, column, value)}
+ * triples and converted directly into the Compressed Row Storage (and optionally the Compressed Col Storage) of the
+ * matrix, so that no {@code Table} or {@code Multimap} with boxed keys and values is needed.
+ * <p/>
+ * Entries may be added in any order. If the same {@code (row, column)} is added more than once, the last value wins,
+ * as it would with {@code Table.put}. The peak memory during {@link #build(boolean)} is roughly twice the size of the
+ * final CRS arrays.
+ * <p/>
+ * A builder is not thread-safe, and it is consumed by {@code build}.
+ */
+public class SparseMatrixBuilder {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // matrix dimension
+    private final int numRows, numColumns;
+
+    // collected triples
+    private int[] rows, cols;
+    private double[] vals;
+    private int size;
+
+    /**
+     * Create a builder for a matrix with given dimensions
+     *
+     * @param numRows    number of rows
+     * @param numColumns number of columns
+     */
+    public SparseMatrixBuilder(int numRows, int numColumns) {
+        this(numRows, numColumns, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a builder for a matrix with given dimensions
+     *
+     * @param numRows     number of rows
+     * @param numColumns  number of columns
+     * @param expectedNnz expected number of non-zero entries, used to size the buffers once
+     */
+    public SparseMatrixBuilder(int numRows, int numColumns, int expectedNnz) {
+        if (numRows < 0 || numColumns < 0)
+            throw new IllegalArgumentException("Invalid matrix dimension " + numRows + " x " + numColumns);
+
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+
+        int capacity = Math.max(expectedNnz, 1);
+        rows = new int[capacity];
+        cols = new int[capacity];
+        vals = new double[capacity];
+    }
+
+    /**
+     * Add an entry [row, column]
+     *
+     * @param row    row id
+     * @param column column id
+     * @param val    value of the entry
+     * @return this builder
+     */
+    public SparseMatrixBuilder add(int row, int column, double val) {
+        if (rows == null)
+            throw new IllegalStateException("The builder has already been used to build a matrix");
+        if (row < 0 || row >= numRows)
+            throw new IllegalArgumentException("row=" + row + ", which is not a valid row index");
+        if (column < 0 || column >= numColumns)
+            throw new IllegalArgumentException("column=" + column + ", which is not a valid column index");
+
+        if (size == rows.length)
+            grow();
+
+        rows[size] = row;
+        cols[size] = column;
+        vals[size] = val;
+        size++;
+
+        return this;
+    }
+
+    /**
+     * @return number of entries added so far, including duplicates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Build a sparse matrix with only CRS structures
+     */
+    public SparseMatrix build() {
+        return build(false);
+    }
+
+    /**
+     * Build a sparse matrix with CRS structures (CCS structure optional).
+     *
+     * @param isCCSUsed whether to construct the column structure as well
+     * @return a sparse matrix holding all the added entries
+     */
+    public SparseMatrix build(boolean isCCSUsed) {
+        if (rows == null)
+            throw new IllegalStateException("The builder has already been used to build a matrix");
+
+        // counting sort of the triples by row, stable w.r.t. insertion order
+        int[] rowPtr = new int[numRows + 1];
+        for (int k = 0; k < size; k++)
+            rowPtr[rows[k] + 1]++;
+        for (int i = 0; i < numRows; i++)
+            rowPtr[i + 1] += rowPtr[i];
+
+        int[] colInd = new int[size];
+        double[] rowData = new double[size];
+        int[] next = Arrays.copyOf(rowPtr, numRows);
+        for (int k = 0; k < size; k++) {
+            int j = next[rows[k]]++;
+            colInd[j] = cols[k];
+            rowData[j] = vals[k];
+        }
+
+        // release the triples before sorting rows and building CCS
+        next = null;
+        rows = null;
+        cols = null;
+        vals = null;
+
+        // sort each row by column and drop duplicates in place
+        int maxRowSize = 0;
+        for (int i = 0; i < numRows; i++)
+            maxRowSize = Math.max(maxRowSize, rowPtr[i + 1] - rowPtr[i]);
+
+        int[] idxBuf = new int[maxRowSize];
+        double[] valBuf = new double[maxRowSize];
+
+        int nnz = 0;
+        for (int i = 0; i < numRows; i++) {
+            int start = rowPtr[i], end = rowPtr[i + 1];
+            IndexSorter.sort(colInd, rowData, start, end, idxBuf, valBuf);
+
+            rowPtr[i] = nnz;
+            nnz += IndexSorter.dedupe(colInd, rowData, start, end, nnz);
+        }
+        rowPtr[numRows] = nnz;
+
+        if (nnz < colInd.length) {
+            colInd = Arrays.copyOf(colInd, nnz);
+            rowData = Arrays.copyOf(rowData, nnz);
+        }
+
+        SparseMatrix mat = new SparseMatrix(numRows, numColumns, rowPtr, colInd, rowData);
+        if (isCCSUsed)
+            mat.constructCCS();
+
+        return mat;
+    }
+
+    private void grow() {
+        int capacity = rows.length + (rows.length >> 1) + 1;
+        if (capacity < 0)
+            capacity = Integer.MAX_VALUE - 8;
+
+        rows = Arrays.copyOf(rows, capacity);
+        cols = Arrays.copyOf(cols, capacity);
+        vals = Arrays.copyOf(vals, capacity);
+    }
+}
@@ -20,9 +20,10 @@ package com.numb3r3.common.data;
 
 
 import com.google.common.collect.Maps;
-import com.numb3r3.common.math.Maths;
 import com.numb3r3.common.opt.DoubleArrays;
 
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -51,6 +52,9 @@ public class SparseVector implements Iterable<VectorEntry> {
     // number of items
     protected int count;
 
+    // size ratio above which an inner product gallops through the larger vector
+    private static final int GALLOP_RATIO = 16;
+
     /**
      * Construct a sparse vector with its maximum capacity
      *
@@ -75,18 +79,87 @@ public class SparseVector implements Iterable<VectorEntry> {
      *            input data
      */
     public SparseVector(int capcity, double[] array) {
-        this(capcity);
+        this.capacity = capcity;
 
         for (int i = 0; i < array.length; i++)
             if (array[i] != 0)
-                this.set(i, array[i]);
+                count++;
+
+        index = new int[count];
+        data = new double[count];
+
+        int k = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] != 0) {
+                check(i);
+                index[k] = i;
+                data[k++] = array[i];
+            }
+        }
+    }
+
+    /**
+     * Construct a sparse vector with its maximum capacity, filled with given
+     * {@code (index, value)} pairs in one shot. The pairs may be in any order;
+     * if an index occurs more than once, the last value wins, as it would with
+     * successive calls of {@code set}.
+     *
+     * @param capcity
+     *            maximum size of the sparse vector
+     * @param idx
+     *            indices of the entries
+     * @param vals
+     *            values of the entries, in the same order as {@code idx}
+     */
+    public SparseVector(int capcity, int[] idx, double[] vals) {
+        if (idx.length != vals.length)
+            throw new IllegalArgumentException("Lengths of indices and values differ (" + idx.length + " != "
+                    + vals.length + ")");
+
+        this.capacity = capcity;
+
+        index = Arrays.copyOf(idx, idx.length);
+        data = Arrays.copyOf(vals, vals.length);
+
+        for (int i : index)
+            check(i);
+
+        IndexSorter.sort(index, data, 0, index.length, null, null);
+        count = IndexSorter.dedupe(index, data, 0, index.length, 0);
+
+        if (count < index.length) {
+            index = Arrays.copyOf(index, count);
+            data = Arrays.copyOf(data, count);
+        }
+    }
+
+    /**
+     * Construct a sparse vector directly on sorted, unique indices and their
+     * values without copying, only used by the matrix classes of this package
+     */
+    SparseVector(int capcity, int[] index, double[] data, int count) {
+        this.capacity = capcity;
+        this.index = index;
+        this.data = data;
+        this.count = count;
     }
 
     /**
      * Construct a sparse vecto by deeply copying another vector
      */
     public SparseVector(SparseVector sv) {
-        this(sv.capacity, sv.data);
+        this.capacity = sv.capacity;
+        this.count = sv.count;
+
+        index = Arrays.copyOf(sv.index, sv.count);
+        data = Arrays.copyOf(sv.data, sv.count);
+    }
+
+    /**
+     * Make a deep copy of current vector
+     */
+    public SparseVector clone() {
+        return new SparseVector(this);
     }
 
     /**
@@ -96,7 +169,7 @@ public class SparseVector implements Iterable<VectorEntry> {
      *            the idex to search
      */
     public boolean contains(int idx) {
-        return Arrays.binarySearch(index, idx) >= 0;
+        return Arrays.binarySearch(index, 0, count, idx) >= 0;
     }
 
     /**
@@ -121,6 +194,44 @@ public class SparseVector implements Iterable<VectorEntry> {
         return res;
     }
 
+    /**
+     * @return a read-only view of the indices, without copying
+     */
+    public IntBuffer getIndexView() {
+        return IntBuffer.wrap(index, 0, count).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a read-only view of the data, without copying
+     */
+    public DoubleBuffer getDataView() {
+        return DoubleBuffer.wrap(data, 0, count).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Index of the {@code k}-th stored entry. Together with
+     * {@link #valueAt(int)} and {@link #getCount()}, this allows to iterate over
+     * the vector without allocating.
+     *
+     * @param k
+     *            position in {@code [0, getCount())}
+     */
+    public int indexAt(int k) {
+        assert k < count;
+        return index[k];
+    }
+
+    /**
+     * Value of the {@code k}-th stored entry.
+     *
+     * @param k
+     *            position in {@code [0, getCount())}
+     */
+    public double valueAt(int k) {
+        assert k < count;
+        return data[k];
+    }
+
     /**
      * @return a list of indices (to prevent changes outside)
      */
@@ -170,14 +281,113 @@ public class SparseVector implements Iterable<VectorEntry> {
         return i >= 0 ? data[i] : 0;
     }
 
+    /**
+     * Add a given sparse vector to the current vector in place, i.e.,
+     * {@code a = a + b}, by a linear merge of the two index arrays
+     */
+    public void addAll(SparseVector vec) {
+        assert capacity == vec.capacity;
+
+        // size of the union of both index sets
+        int union = count + vec.count;
+        for (int i = 0, j = 0; i < count && j < vec.count;) {
+            if (index[i] < vec.index[j])
+                i++;
+            else if (index[i] > vec.index[j])
+                j++;
+            else {
+                union--;
+                i++;
+                j++;
+            }
+        }
+
+        // all the indices are present already: add in place
+        if (union == count) {
+            for (int i = 0, j = 0; j < vec.count; i++) {
+                if (index[i] == vec.index[j])
+                    data[i] += vec.data[j++];
+            }
+            return;
+        }
+
+        if (union > data.length) {
+            index = Arrays.copyOf(index, union);
+            data = Arrays.copyOf(data, union);
+        }
+
+        // merge backwards, so that no entry is overwritten before it is read
+        int i = count - 1, j = vec.count - 1;
+        for (int k = union - 1; k >= 0; k--) {
+            if (j < 0 || (i >= 0 && index[i] > vec.index[j])) {
+                index[k] = index[i];
+                data[k] = data[i--];
+            } else if (i < 0 || index[i] < vec.index[j]) {
+                index[k] = vec.index[j];
+                data[k] = vec.data[j--];
+            } else {
+                index[k] = index[i];
+                data[k] = data[i--] + vec.data[j--];
+            }
+        }
+
+        count = union;
+    }
+
     /**
      * @return inner product with a given sparse vector
      */
     public double inner(SparseVector vec) {
+        // gallop through the larger vector if sizes are very skewed
+        if (count * GALLOP_RATIO < vec.count)
+            return gallopInner(this, vec);
+        if (vec.count * GALLOP_RATIO < count)
+            return gallopInner(vec, this);
+
+        // linear two-pointer merge
+        double res = 0;
+        for (int i = 0, j = 0; i < count && j < vec.count;) {
+            int a = index[i], b = vec.index[j];
+            if (a < b)
+                i++;
+            else if (a > b)
+                j++;
+            else
+                res += data[i++] * vec.data[j++];
+        }
+
+        return res;
+    }
+
+    /**
+     * Inner product of a small vector and a much larger one: each index of the
+     * small vector is located in the large one by an exponential search from
+     * the last match, which costs {@code O(m log(n/m))} instead of
+     * {@code O(m + n)}.
+     */
+    private static double gallopInner(SparseVector small, SparseVector large) {
         double res = 0;
-        for (int idx : this.getIndex()) {
-            if (vec.contains(idx))
-                res += get(idx) * vec.get(idx);
+        int lo = 0;
+
+        for (int i = 0; i < small.count && lo < large.count; i++) {
+            int idx = small.index[i];
+
+            // find a range [lo, hi) that must contain idx
+            int step = 1, hi = lo;
+            while (hi < large.count && large.index[hi] < idx) {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi + 1, large.count);
+
+            int k = Arrays.binarySearch(large.index, lo, hi, idx);
+            if (k >= 0) {
+                res += small.data[i] * large.data[k];
+                lo = k + 1;
+            } else {
+                lo = -(k + 1);
+            }
         }
 
         return res;
@@ -187,9 +397,11 @@ public class SparseVector implements Iterable<VectorEntry> {
      * @return inner product with a given dense vector
      */
     public double inner(DenseVector vec) {
+        double[] x = vec.data;
+
         double res = 0;
-        for (int idx : this.getIndex())
-            res += get(idx) * vec.get(idx);
+        for (int i = 0; i < count; i++)
+            res += data[i] * x[index[i]];
 
         return res;
     }
@@ -198,7 +410,11 @@ public class SparseVector implements Iterable<VectorEntry> {
      * @return sum of vector entries
      */
     public double sum() {
-        return Maths.sum(data);
+        double sum = 0;
+        for (int i = 0; i < count; i++)
+            sum += data[i];
+
+        return sum;
     }
 
     /**
@@ -0,0 +1,399 @@
+package com.numb3r3.common.math;
+
+import com.numb3r3.common.concurrent.Parallel;
+import com.numb3r3.common.math.local.InMemoryJBlasMatrix;
+import com.numb3r3.common.math.local.InMemoryJavaMatrix;
+import org.jblas.DoubleMatrix;
+
+import java.util.Arrays;
+
+/**
+ * A lazily evaluated chain of element-wise matrix operations <br>
+ *
+ * Operations such as {@code a.sub(b).mult(c).add(d)} on {@link Matrix} create a full temporary matrix at every step.
+ * An expression only records them:
+ *
+ * <pre>
+ * Matrix r = MatrixExpression.of(a).sub(b).mult(c).add(d).eval();
+ * </pre>
+ *
+ * and evaluates the whole chain in a single pass: elements are processed in small blocks which stay in cache while
+ * all operations are applied, so every operand is read once and a single output is written. Large matrices are
+ * evaluated in parallel.
+ * <p/>
+ * Recording methods append to the current expression and return it. Elements are visited in column-major order, the
+ * storage order of both backends, whose arrays are read directly; other matrices are read through
+ * {@link Matrix#get(int, int)}.
+ *
+ * @author numb3r3
+ */
+public class MatrixExpression {
+
+    private static final int ADD = 0, SUB = 1, MULT = 2, DIV = 3, NEG = 4, EXP = 5, LOG = 6, SQRT = 7, SQUARE = 8;
+
+    // elements per block: the accumulator and one operand block (16 KB) stay in L1 cache
+    private static final int BLOCK_SIZE = 1024;
+
+    // minimum number of elements per parallel task
+    private static final int MIN_TASK_SIZE = 1 << 16;
+
+    private final Matrix root;
+    private final int rows, columns;
+
+    // recorded operations, with either a matrix or a scalar operand
+    private int[] ops = new int[4];
+    private Matrix[] operands = new Matrix[4];
+    private double[] scalars = new double[4];
+    private int size;
+
+    /**
+     * Start an expression from a matrix, which is not modified unless it is the output of the evaluation
+     *
+     * @param root the initial value of the expression
+     */
+    public MatrixExpression(Matrix root) {
+        this.root = root;
+        this.rows = root.getRowsNum();
+        this.columns = root.getColumnsNum();
+    }
+
+    /**
+     * Start an expression from a matrix of any backend
+     *
+     * @param root the initial value of the expression
+     * @return a new expression, to which operations are recorded
+     */
+    public static MatrixExpression of(Matrix root) {
+        return new MatrixExpression(root);
+    }
+
+    public int getRowsNum() {
+        return rows;
+    }
+
+    public int getColumnsNum() {
+        return columns;
+    }
+
+    /**
+     * Element-wise addition of a matrix.
+     */
+    public MatrixExpression add(final Matrix other) {
+        return record(ADD, other, 0);
+    }
+
+    /**
+     * Add a scalar to all elements.
+     */
+    public MatrixExpression add(final double scalar) {
+        return record(ADD, null, scalar);
+    }
+
+    /**
+     * Element-wise subtraction of a matrix.
+     */
+    public MatrixExpression sub(final Matrix other) {
+        return record(SUB, other, 0);
+    }
+
+    /**
+     * Subtract a scalar from all elements.
+     */
+    public MatrixExpression sub(final double scalar) {
+        return record(SUB, null, scalar);
+    }
+
+    /**
+     * Element-wise multiplication with a matrix.
+     */
+    public MatrixExpression mult(final Matrix other) {
+        return record(MULT, other, 0);
+    }
+
+    /**
+     * Multiply all elements by a scalar.
+     */
+    public MatrixExpression mult(final double scalar) {
+        return record(MULT, null, scalar);
+    }
+
+    /**
+     * Element-wise division by a matrix.
+     */
+    public MatrixExpression div(final Matrix other) {
+        return record(DIV, other, 0);
+    }
+
+    /**
+     * Divide all elements by a scalar.
+     */
+    public MatrixExpression div(final double scalar) {
+        return record(DIV, null, scalar);
+    }
+
+    /**
+     * Negate all elements.
+     */
+    public MatrixExpression neg() {
+        return record(NEG, null, 0);
+    }
+
+    /**
+     * Element-wise exponential.
+     */
+    public MatrixExpression exp() {
+        return record(EXP, null, 0);
+    }
+
+    /**
+     * Element-wise natural logarithm.
+     */
+    public MatrixExpression log() {
+        return record(LOG, null, 0);
+    }
+
+    /**
+     * Element-wise square root.
+     */
+    public MatrixExpression sqrt() {
+        return record(SQRT, null, 0);
+    }
+
+    /**
+     * Element-wise square.
+     */
+    public MatrixExpression square() {
+        return record(SQUARE, null, 0);
+    }
+
+    private MatrixExpression record(int op, Matrix operand, double scalar) {
+        if (operand != null && (operand.getRowsNum() != rows || operand.getColumnsNum() != columns))
+            throw new IllegalArgumentException("the two matrices should have same dimensions: " + rows + "x"
+                    + columns + " vs. " + operand.getRowsNum() + "x" + operand.getColumnsNum());
+
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+            scalars = Arrays.copyOf(scalars, size * 2);
+        }
+
+        ops[size] = op;
+        operands[size] = operand;
+        scalars[size] = scalar;
+        size++;
+
+        return this;
+    }
+
+    /**
+     * Evaluate the expression into a new matrix.
+     *
+     * @return the result, of the same backend as the initial matrix
+     */
+    public Matrix eval() {
+        Matrix out;
+        if (root instanceof InMemoryJBlasMatrix)
+            out = InMemoryJBlasMatrix.zeros(rows, columns);
+        else if (root instanceof InMemoryJavaMatrix)
+            out = InMemoryJavaMatrix.zeros(rows, columns);
+        else
+            out = root.dup();
+
+        evalInto(out);
+
+        return out;
+    }
+
+    /**
+     * Evaluate the expression into the initial matrix, like the in-place operations {@code addi}, {@code subi}, ...
+     *
+     * @return the initial matrix
+     */
+    public Matrix evalInPlace() {
+        evalInto(root);
+
+        return root;
+    }
+
+    /**
+     * Evaluate the expression into a given matrix, which may be one of the operands.
+     *
+     * @param out the output matrix, of the same dimensions
+     */
+    public void evalInto(final Matrix out) {
+        if (out.getRowsNum() != rows || out.getColumnsNum() != columns)
+            throw new IllegalArgumentException("the output should have dimensions " + rows + "x" + columns);
+
+        final double[][] arrays = arrays();
+        final double[] dest = array(out);
+
+        Parallel.blockingRanges(Parallel.split(0, rows * columns, numTasks()), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                double[] acc = new double[BLOCK_SIZE], buf = new double[BLOCK_SIZE];
+
+                for (int start = from; start < to; start += BLOCK_SIZE) {
+                    int len = Math.min(BLOCK_SIZE, to - start);
+                    evalBlock(arrays, start, len, acc, buf);
+
+                    if (dest != null)
+                        System.arraycopy(acc, 0, dest, start, len);
+                    else
+                        for (int k = 0; k < len; k++)
+                            out.put((start + k) % rows, (start + k) / rows, acc[k]);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the sum of all elements of the result, computed without materializing it
+     */
+    public double sum() {
+        final double[][] arrays = arrays();
+        final int[] bounds = Parallel.split(0, rows * columns, numTasks());
+        final double[] partial = new double[bounds.length - 1];
+
+        Parallel.blockingRanges(bounds, new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                double[] acc = new double[BLOCK_SIZE], buf = new double[BLOCK_SIZE];
+
+                double sum = 0;
+                for (int start = from; start < to; start += BLOCK_SIZE) {
+                    int len = Math.min(BLOCK_SIZE, to - start);
+                    evalBlock(arrays, start, len, acc, buf);
+
+                    for (int k = 0; k < len; k++)
+                        sum += acc[k];
+                }
+
+                partial[Arrays.binarySearch(bounds, from)] = sum;
+            }
+        });
+
+        double sum = 0;
+        for (double s : partial)
+            sum += s;
+
+        return sum;
+    }
+
+    private int numTasks() {
+        return Math.max(1, Math.min(Parallel.numCores(), rows * columns / MIN_TASK_SIZE));
+    }
+
+    /**
+     * @return the column-major arrays of the root (at index 0) and of the operands, or null where not available
+     */
+    private double[][] arrays() {
+        double[][] arrays = new double[size + 1][];
+        arrays[0] = array(root);
+        for (int i = 0; i < size; i++)
+            if (operands[i] != null)
+                arrays[i + 1] = array(operands[i]);
+
+        return arrays;
+    }
+
+    private static double[] array(Matrix m) {
+        Object data = m.getData();
+        if (data instanceof DoubleMatrix)
+            return ((DoubleMatrix) data).data;
+        if (data instanceof double[])
+            return (double[]) data;
+
+        return null;
+    }
+
+    private void load(Matrix m, double[] array, int start, int len, double[] block) {
+        if (array != null) {
+            System.arraycopy(array, start, block, 0, len);
+        } else {
+            for (int k = 0; k < len; k++)
+                block[k] = m.get((start + k) % rows, (start + k) / rows);
+        }
+    }
+
+    /**
+     * Apply all operations to the elements {@code [start, start + len)}, leaving the results in {@code acc}
+     */
+    private void evalBlock(double[][] arrays, int start, int len, double[] acc, double[] buf) {
+        load(root, arrays[0], start, len, acc);
+
+        for (int i = 0; i < size; i++) {
+            int op = ops[i];
+
+            if (op > DIV) {
+                for (int k = 0; k < len; k++) {
+                    double v = acc[k];
+                    switch (op) {
+                        case NEG:
+                            v = -v;
+                            break;
+                        case EXP:
+                            v = Math.exp(v);
+                            break;
+                        case LOG:
+                            v = Math.log(v);
+                            break;
+                        case SQRT:
+                            v = Math.sqrt(v);
+                            break;
+                        default:
+                            v = v * v;
+                    }
+                    acc[k] = v;
+                }
+            } else if (operands[i] == null) {
+                double s = scalars[i];
+                switch (op) {
+                    case ADD:
+                        for (int k = 0; k < len; k++)
+                            acc[k] += s;
+                        break;
+                    case SUB:
+                        for (int k = 0; k < len; k++)
+                            acc[k] -= s;
+                        break;
+                    case MULT:
+                        for (int k = 0; k < len; k++)
+                            acc[k] *= s;
+                        break;
+                    default:
+                        for (int k = 0; k < len; k++)
+                            acc[k] /= s;
+                }
+            } else {
+                // read the operand in place if possible, else through a block copy
+                double[] src = arrays[i + 1];
+                int offset = start;
+                if (src == null) {
+                    load(operands[i], null, start, len, buf);
+                    src = buf;
+                    offset = 0;
+                }
+
+                switch (op) {
+                    case ADD:
+                        for (int k = 0; k < len; k++)
+                            acc[k] += src[offset + k];
+                        break;
+                    case SUB:
+                        for (int k = 0; k < len; k++)
+                            acc[k] -= src[offset + k];
+                        break;
+                    case MULT:
+                        for (int k = 0; k < len; k++)
+                            acc[k] *= src[offset + k];
+                        break;
+                    default:
+                        for (int k = 0; k < len; k++)
+                            acc[k] /= src[offset + k];
+                }
+            }
+        }
+    }
+}
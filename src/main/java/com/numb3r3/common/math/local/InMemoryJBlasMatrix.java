@@ -128,6 +128,18 @@ public class InMemoryJBlasMatrix implements Matrix {
         return new InMemoryJBlasMatrix(DoubleMatrix.eye(n), null);
     }
 
+    /**
+     * @return the jblas matrix of an operand, converted from the column-major
+     * elements of other backends.
+     */
+    private static DoubleMatrix toDoubleMatrix(Matrix m) {
+        Object data = m.getData();
+        if (data instanceof DoubleMatrix) {
+            return (DoubleMatrix) data;
+        }
+        return new DoubleMatrix(m.getRowsNum(), m.getColumnsNum(), m.toArray());
+    }
+
     @Override
     public Pair getDims() {
         return new Pair(this.getRowsNum(), this.getColumnsNum());
@@ -138,71 +150,53 @@ public class InMemoryJBlasMatrix implements Matrix {
         return this.doubleMatrix;
     }
 
-    private int changeSign(int i) {
-        if (i % 2 == 0)
-            return 1;
-        else
-            return -1;
+    /**
+     * Computes the LU decomposition of the matrix. Each call factors the
+     * matrix anew; callers that need the factorization several times should
+     * keep the decomposition.
+     *
+     * @return the LU decomposition of the square matrix.
+     */
+    public LUDecomposition lu() {
+        return new LUDecomposition(this.doubleMatrix.data, this.getRowsNum());
     }
 
-    private Matrix createSubMatrix(int excluding_row, int excluding_col) {
-        Matrix mat = new InMemoryJBlasMatrix(this.getRowsNum() - 1,
-                this.getColumnsNum() - 1, this.errorProcessor);
-        int r = -1;
-        for (int i = 0; i < this.getRowsNum(); i++) {
-            if (i == excluding_row)
-                continue;
-            r++;
-            int c = -1;
-            for (int j = 0; j < this.getColumnsNum(); j++) {
-                if (j == excluding_col)
-                    continue;
-                mat.put(r, ++c, this.get(i, j));
-            }
+    /**
+     * @throws ArithmeticException if the matrix is not square
+     */
+    @Override
+    public double det() {
+        if (!this.isSquare()) {
+            throw arithmeticError("the matrix should be square.");
         }
-        return mat;
+        return this.lu().det();
     }
 
+    /**
+     * @throws ArithmeticException if the matrix is not square or is singular
+     */
     @Override
-    public double det() {
+    public Matrix inverse() {
         if (!this.isSquare()) {
-            System.out.println("Error: not squre matrix.");
-            System.exit(0);
-        }
-        if (this.getLength() == 1) {
-            return this.get(0, 0);
+            throw arithmeticError("the matrix should be square.");
         }
-        if (this.getLength() == 2) {
-            return this.get(0, 0) * this.get(1, 1) - this.get(0, 1)
-                    * this.get(1, 0);
+        LUDecomposition lu = this.lu();
+        if (lu.isSingular()) {
+            throw arithmeticError("the matrix is singular.");
         }
-
-        double sum = 0.0;
-        for (int i = 0; i < this.getColumnsNum(); i++) {
-            sum += changeSign(i) * this.get(0, i)
-                    * this.createSubMatrix(0, i).det();
-        }
-        return sum;
+        return new InMemoryJBlasMatrix(new DoubleMatrix(this.getRowsNum(),
+                this.getColumnsNum(), lu.inverseArray()), this.errorProcessor);
     }
 
-    private Matrix cofactor() {
-        Matrix mat = new InMemoryJBlasMatrix(this.getRowsNum(),
-                this.getColumnsNum(), this.errorProcessor);
-        for (int i = 0; i < this.getRowsNum(); i++) {
-            for (int j = 0; j < this.getColumnsNum(); j++) {
-                mat.put(i, j,
-                        changeSign(i) * changeSign(j)
-                                * createSubMatrix(i, j).det());
-            }
+    /**
+     * Reports the error to the error processor, if any, and returns the
+     * exception to throw.
+     */
+    private ArithmeticException arithmeticError(String message) {
+        if (errorProcessor != null) {
+            errorProcessor.error(message);
         }
-
-        return mat;
-    }
-
-    @Override
-    public Matrix inverse() {
-        return this.cofactor().transpose().mult(1.0 / this.det());
-
+        return new ArithmeticException(message);
     }
 
     @Override
@@ -477,26 +471,22 @@ public class InMemoryJBlasMatrix implements Matrix {
 
     @Override
     public double dot(final Matrix other) {
-        return this.getData().dot((DoubleMatrix) other.getData());
+        return this.getData().dot(toDoubleMatrix(other));
     }
 
     @Override
     public Matrix product(final Matrix other) {
         if (this.getColumnsNum() == other.getRowsNum()) {
-            Matrix temp = new InMemoryJBlasMatrix(this.getRowsNum(),
-                    other.getColumnsNum(), errorProcessor);
-            // System.out.println(temp + "\n");
-            for (int i = 0; i < this.getRowsNum(); i++) {
-                for (int j = 0; j < other.getColumnsNum(); j++) {
-                    // System.out.println(this.getRow(i) + "\t" +
-                    // other.getColumn(j) + "\n");
-                    // System.out.println(i + ":" + j + "\t" +
-                    // this.getRow(i).dot(other.getColumn(j)));
-                    // temp.put(i, j, 0.0);
-                    temp.put(i, j, this.getRow(i).dot(other.getColumn(j)));
-                }
+            if (MatrixFactory.isJBlasAvailable()) {
+                return new InMemoryJBlasMatrix(this.getData().mmul(
+                        toDoubleMatrix(other)), errorProcessor);
             }
-            return temp;
+            // gemm needs the native libraries, use the blocked Java kernel
+            double[] res = (double[]) new InMemoryJavaMatrix(this.getRowsNum(),
+                    this.getColumnsNum(), this.getData().data, null)
+                    .product(other).getData();
+            return new InMemoryJBlasMatrix(new DoubleMatrix(this.getRowsNum(),
+                    other.getColumnsNum(), res), errorProcessor);
         } else {
             errorProcessor
                     .error("the two matrices should have matched dimensions.");
@@ -506,7 +496,7 @@ public class InMemoryJBlasMatrix implements Matrix {
 
     @Override
     public void divi(Matrix other) {
-        this.getData().divi((DoubleMatrix) other.getData());
+        this.getData().divi(toDoubleMatrix(other));
 
     }
 
@@ -514,7 +504,7 @@ public class InMemoryJBlasMatrix implements Matrix {
     public Matrix div(Matrix other) {
         if (this.isSameDim(other)) {
             Matrix dump = new InMemoryJBlasMatrix(this.getData().div(
-                    (DoubleMatrix) other.getData()), errorProcessor);
+                    toDoubleMatrix(other)), errorProcessor);
             return dump;
         } else {
             errorProcessor
@@ -581,13 +571,13 @@ public class InMemoryJBlasMatrix implements Matrix {
 
     @Override
     public void selecti(final Matrix where) {
-        this.getData().selecti((DoubleMatrix) where.getData());
+        this.getData().selecti(toDoubleMatrix(where));
     }
 
     @Override
     public Matrix select(final Matrix where) {
         Matrix dump = this.dup();
-        ((DoubleMatrix) dump.getData()).select((DoubleMatrix) where.getData());
+        ((DoubleMatrix) dump.getData()).select(toDoubleMatrix(where));
         return dump;
     }
 
@@ -741,12 +731,12 @@ public class InMemoryJBlasMatrix implements Matrix {
 
     @Override
     public double euclideanDis(final Matrix other) {
-        return this.getData().distance2((DoubleMatrix) other.getData());
+        return this.getData().distance2(toDoubleMatrix(other));
     }
 
     @Override
     public double normDis(final Matrix other) {
-        return this.getData().distance1((DoubleMatrix) other.getData());
+        return this.getData().distance1(toDoubleMatrix(other));
     }
 
     @Override
@@ -0,0 +1,1051 @@
+/**
+ *
+ */
+package com.numb3r3.common.math.local;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+import com.numb3r3.common.*;
+import com.numb3r3.common.concurrent.Parallel;
+import com.numb3r3.common.math.Matrix;
+import com.numb3r3.common.math.stat.RandomUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * A pure-Java {@link Matrix} on a flat {@code double[]}, without native dependencies.
+ * <p/>
+ * Elements are stored column-major, the same layout as jblas, so linear indices
+ * ({@link #findIndices()}, {@link #argmax()}, ...) and {@link #toArray()} agree
+ * between both backends. {@link #product(Matrix)}, {@link #transpose()},
+ * {@link #inverse()} and {@link #det()} are blocked and multithreaded.
+ *
+ * @author numb3r3
+ * @see MatrixFactory
+ */
+public class InMemoryJavaMatrix implements Matrix {
+
+    // tile sizes of the product: a BLOCK_I x BLOCK_K tile of the left matrix (128 KB) stays in L2 cache
+    private static final int BLOCK_I = 256, BLOCK_K = 64;
+
+    // tile size of the transpose
+    private static final int BLOCK_T = 32;
+
+    private final int rows, columns;
+
+    private final double[] data;
+
+    private ErrorProcessor errorProcessor = null;
+
+    public InMemoryJavaMatrix(final int rowNum, final int colNum,
+                              final ErrorProcessor errorProcessor) {
+        this(rowNum, colNum, new double[rowNum * colNum], errorProcessor);
+    }
+
+    public InMemoryJavaMatrix(final int rowNum, final int colNum) {
+        this(rowNum, colNum, (ErrorProcessor) null);
+    }
+
+    /**
+     * Wrap column-major data without copying.
+     */
+    public InMemoryJavaMatrix(final int rowNum, final int colNum,
+                              final double[] data, final ErrorProcessor errorProcessor) {
+        if (errorProcessor != null) {
+            this.errorProcessor = errorProcessor;
+        } else {
+            this.errorProcessor = new SystemErrorProcessor();
+        }
+
+        if (rowNum == 0 && colNum == 0) {
+            throw new UnsupportedOperationException(
+                    "Matrix should have more than zero elements.");
+        }
+        if (data.length != rowNum * colNum) {
+            throw new IllegalArgumentException("The data should have "
+                    + rowNum * colNum + " elements.");
+        }
+
+        this.rows = rowNum;
+        this.columns = colNum;
+        this.data = data;
+    }
+
+    public static Matrix arrayMatrix(double[] arrays) {
+        return new InMemoryJavaMatrix(arrays.length, 1, arrays.clone(), null);
+    }
+
+    public static Matrix zeros(final int size) {
+        return zeros(size, 1);
+    }
+
+    public static Matrix zeros(final int rows, final int cols) {
+        return new InMemoryJavaMatrix(rows, cols);
+    }
+
+    /**
+     * Creates an random matrix with elements assinged with values in [0, 1]
+     */
+    public static Matrix rand(final int rows, final int columns,
+                              final ErrorProcessor errorProcessor) {
+        InMemoryJavaMatrix matrix = new InMemoryJavaMatrix(rows, columns, errorProcessor);
+        for (int i = 0; i < matrix.data.length; i++) {
+            matrix.data[i] = RandomUtil.uniform();
+        }
+        return matrix;
+    }
+
+    public static Matrix rand(final int length,
+                              final ErrorProcessor errorProcessor) {
+        return rand(length, 1, errorProcessor);
+    }
+
+    /**
+     * Create matrix with normally distributed random values.
+     */
+    public static Matrix randn(final int rows, final int columns) {
+        InMemoryJavaMatrix matrix = new InMemoryJavaMatrix(rows, columns);
+        for (int i = 0; i < matrix.data.length; i++) {
+            matrix.data[i] = RandomUtil.gaussian();
+        }
+        return matrix;
+    }
+
+    public static Matrix randn(final int length) {
+        return randn(length, 1);
+    }
+
+    public static Matrix ones(final int rows, final int columns) {
+        InMemoryJavaMatrix matrix = new InMemoryJavaMatrix(rows, columns);
+        Arrays.fill(matrix.data, 1.0);
+        return matrix;
+    }
+
+    public static Matrix ones(final int length) {
+        return ones(length, 1);
+    }
+
+    public static Matrix eye(final int n) {
+        InMemoryJavaMatrix matrix = new InMemoryJavaMatrix(n, n);
+        for (int i = 0; i < n; i++) {
+            matrix.data[i + i * n] = 1.0;
+        }
+        return matrix;
+    }
+
+    /**
+     * @return the column-major elements of a matrix, shared if it is a
+     * pure-Java matrix.
+     */
+    private static double[] array(Matrix m) {
+        Object data = m.getData();
+        if (data instanceof double[]) {
+            return (double[]) data;
+        }
+        return m.toArray();
+    }
+
+    private InMemoryJavaMatrix create(int rowNum, int colNum) {
+        return new InMemoryJavaMatrix(rowNum, colNum, errorProcessor);
+    }
+
+    @Override
+    public Pair getDims() {
+        return new Pair(this.getRowsNum(), this.getColumnsNum());
+    }
+
+    /**
+     * @return the column-major elements, not copied.
+     */
+    @Override
+    public double[] getData() {
+        return this.data;
+    }
+
+    @Override
+    public int getRowsNum() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnsNum() {
+        return columns;
+    }
+
+    @Override
+    public int getLength() {
+        return data.length;
+    }
+
+    @Override
+    public Matrix dialog() {
+        Matrix values = this.isSquare() ? this.diag() : this;
+        int n = values.getLength();
+        InMemoryJavaMatrix matrix = create(n, n);
+        double[] v = array(values);
+        for (int i = 0; i < n; i++) {
+            matrix.data[i + i * n] = v[i];
+        }
+        return matrix;
+    }
+
+    @Override
+    public Matrix diag() {
+        if (!this.isSquare()) {
+            errorProcessor.error("the matrix should be square.");
+            return null;
+        }
+        InMemoryJavaMatrix matrix = create(rows, 1);
+        for (int i = 0; i < rows; i++) {
+            matrix.data[i] = data[i + i * rows];
+        }
+        return matrix;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return data[row + column * rows];
+    }
+
+    @Override
+    public Matrix get(int row, int[] indices) {
+        InMemoryJavaMatrix matrix = create(1, indices.length);
+        for (int j = 0; j < indices.length; j++) {
+            matrix.data[j] = get(row, indices[j]);
+        }
+        return matrix;
+    }
+
+    @Override
+    public Matrix get(int[] indices, int column) {
+        InMemoryJavaMatrix matrix = create(indices.length, 1);
+        for (int i = 0; i < indices.length; i++) {
+            matrix.data[i] = get(indices[i], column);
+        }
+        return matrix;
+    }
+
+    @Override
+    public Matrix get(int[] rindices, int[] cindices) {
+        InMemoryJavaMatrix matrix = create(rindices.length, cindices.length);
+        for (int j = 0; j < cindices.length; j++) {
+            for (int i = 0; i < rindices.length; i++) {
+                matrix.data[i + j * rindices.length] = get(rindices[i], cindices[j]);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public Matrix getRow(int row) {
+        if (row >= rows) {
+            errorProcessor.error("the row is out of boundary.");
+            throw new UnsupportedOperationException(
+                    "the row is out of boundary.");
+        }
+        InMemoryJavaMatrix matrix = create(1, columns);
+        for (int j = 0; j < columns; j++) {
+            matrix.data[j] = data[row + j * rows];
+        }
+        return matrix;
+    }
+
+    @Override
+    public Matrix getColumn(int column) {
+        InMemoryJavaMatrix matrix = create(rows, 1);
+        System.arraycopy(data, column * rows, matrix.data, 0, rows);
+        return matrix;
+    }
+
+    @Override
+    public void put(int row, int column, double value) {
+        if (row > rows - 1 || column > columns - 1) {
+            errorProcessor.error("The row/column is out of bounds.");
+            return;
+        }
+        data[row + column * rows] = value;
+    }
+
+    @Override
+    public int[] findIndices() {
+        int count = 0;
+        for (double v : data) {
+            if (v != 0.0) {
+                count++;
+            }
+        }
+        int[] indices = new int[count];
+        for (int i = 0, k = 0; i < data.length; i++) {
+            if (data[i] != 0.0) {
+                indices[k++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Blocked transpose, parallel over tiles of columns.
+     */
+    @Override
+    public Matrix transpose() {
+        final InMemoryJavaMatrix matrix = create(columns, rows);
+        final double[] t = matrix.data;
+
+        int blocks = (columns + BLOCK_T - 1) / BLOCK_T;
+        int tasks = LUDecomposition.numTasks((long) data.length);
+        Parallel.blockingRanges(Parallel.split(0, blocks, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int j0 = from * BLOCK_T; j0 < Math.min(to * BLOCK_T, columns); j0 += BLOCK_T) {
+                    int j1 = Math.min(j0 + BLOCK_T, columns);
+                    for (int i0 = 0; i0 < rows; i0 += BLOCK_T) {
+                        int i1 = Math.min(i0 + BLOCK_T, rows);
+                        for (int j = j0; j < j1; j++) {
+                            for (int i = i0; i < i1; i++) {
+                                t[j + i * columns] = data[i + j * rows];
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        return matrix;
+    }
+
+    @Override
+    public void copy(Matrix m) {
+        if (this.isSameDim(m)) {
+            System.arraycopy(array(m), 0, data, 0, data.length);
+        } else {
+            errorProcessor.error("The matrices should have same dimensions.");
+        }
+    }
+
+    @Override
+    public Matrix dup() {
+        return new InMemoryJavaMatrix(rows, columns, data.clone(), errorProcessor);
+    }
+
+    @Override
+    public Matrix swapColumns(int i, int j) {
+        if (i != j) {
+            double[] temp = new double[rows];
+            System.arraycopy(data, i * rows, temp, 0, rows);
+            System.arraycopy(data, j * rows, data, i * rows, rows);
+            System.arraycopy(temp, 0, data, j * rows, rows);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix swapRows(int i, int j) {
+        for (int k = 0; k < data.length; k += rows) {
+            double temp = data[k + i];
+            data[k + i] = data[k + j];
+            data[k + j] = temp;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isSquare() {
+        return rows == columns;
+    }
+
+    @Override
+    public double[] toArray() {
+        return data.clone();
+    }
+
+    @Override
+    public boolean isScalar() {
+        return data.length == 1;
+    }
+
+    public boolean isSameDim(Matrix other) {
+        return rows == other.getRowsNum() && columns == other.getColumnsNum();
+    }
+
+    @Override
+    public void addi(Matrix other) {
+        if (this.isSameDim(other)) {
+            double[] o = array(other);
+            for (int i = 0; i < data.length; i++) {
+                data[i] += o[i];
+            }
+        } else {
+            errorProcessor
+                    .error("The two matrices should have same dimensions.");
+        }
+    }
+
+    @Override
+    public Matrix add(Matrix other) {
+        Matrix dump = this.dup();
+        dump.addi(other);
+        return dump;
+    }
+
+    @Override
+    public void addi(double scale) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] += scale;
+        }
+    }
+
+    @Override
+    public Matrix add(double scale) {
+        Matrix dump = this.dup();
+        dump.addi(scale);
+        return dump;
+    }
+
+    @Override
+    public void subi(Matrix other) {
+        if (this.isSameDim(other)) {
+            double[] o = array(other);
+            for (int i = 0; i < data.length; i++) {
+                data[i] -= o[i];
+            }
+        } else {
+            errorProcessor
+                    .error("the two matrices should have same dimensions.");
+        }
+    }
+
+    @Override
+    public Matrix sub(Matrix other) {
+        if (this.isSameDim(other)) {
+            Matrix dump = this.dup();
+            dump.subi(other);
+            return dump;
+        } else {
+            errorProcessor
+                    .error("the two matrices should have same dimensions.");
+            return null;
+        }
+    }
+
+    @Override
+    public void subi(double scale) {
+        addi(-scale);
+    }
+
+    @Override
+    public Matrix sub(double scale) {
+        Matrix dump = this.dup();
+        dump.subi(scale);
+        return dump;
+    }
+
+    @Override
+    public void multi(Matrix other) {
+        if (this.isSameDim(other)) {
+            double[] o = array(other);
+            for (int i = 0; i < data.length; i++) {
+                data[i] *= o[i];
+            }
+        } else {
+            errorProcessor
+                    .error("the two matrices should have same dimensions.");
+        }
+    }
+
+    @Override
+    public Matrix mult(Matrix other) {
+        Matrix dump = this.dup();
+        dump.multi(other);
+        return dump;
+    }
+
+    @Override
+    public void multi(double scale) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] *= scale;
+        }
+    }
+
+    @Override
+    public Matrix mult(double scale) {
+        Matrix dump = this.dup();
+        dump.multi(scale);
+        return dump;
+    }
+
+    @Override
+    public double dot(final Matrix other) {
+        double[] o = array(other);
+        double res = 0.0;
+        for (int i = 0; i < data.length; i++) {
+            res += data[i] * o[i];
+        }
+        return res;
+    }
+
+    /**
+     * Blocked matrix product, parallel over the columns of the result.
+     */
+    @Override
+    public Matrix product(final Matrix other) {
+        if (columns != other.getRowsNum()) {
+            errorProcessor
+                    .error("the two matrices should have matched dimensions.");
+            return null;
+        }
+
+        final int m = rows, p = columns, n = other.getColumnsNum();
+        final double[] a = data, b = array(other);
+        final InMemoryJavaMatrix res = create(m, n);
+        final double[] c = res.data;
+
+        int tasks = Math.min(n, LUDecomposition.numTasks((long) m * n * p));
+        Parallel.blockingRanges(Parallel.split(0, n, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int k0 = 0; k0 < p; k0 += BLOCK_K) {
+                    int k1 = Math.min(k0 + BLOCK_K, p);
+                    for (int i0 = 0; i0 < m; i0 += BLOCK_I) {
+                        int i1 = Math.min(i0 + BLOCK_I, m);
+                        for (int j = from; j < to; j++) {
+                            int cj = j * m, bj = j * p;
+                            for (int k = k0; k < k1; k++) {
+                                double bkj = b[bj + k];
+                                int ak = k * m;
+                                for (int i = i0; i < i1; i++) {
+                                    c[cj + i] += a[ak + i] * bkj;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        return res;
+    }
+
+    @Override
+    public void divi(Matrix other) {
+        if (this.isSameDim(other)) {
+            double[] o = array(other);
+            for (int i = 0; i < data.length; i++) {
+                data[i] /= o[i];
+            }
+        } else {
+            errorProcessor
+                    .error("the two matrices should have same dimensions.");
+        }
+    }
+
+    @Override
+    public Matrix div(Matrix other) {
+        if (this.isSameDim(other)) {
+            Matrix dump = this.dup();
+            dump.divi(other);
+            return dump;
+        } else {
+            errorProcessor
+                    .error("the two matrices should have same dimensions.");
+            return null;
+        }
+    }
+
+    @Override
+    public void divi(double scalar) {
+        if (!MathUtil.isZero(scalar)) {
+            multi(1.0 / scalar);
+        } else {
+            errorProcessor
+                    .error("the operation is illegal. (the division should not to be zero)");
+        }
+    }
+
+    @Override
+    public Matrix div(double scalar) {
+        if (!MathUtil.isZero(scalar)) {
+            return mult(1.0 / scalar);
+        } else {
+            errorProcessor
+                    .error("the operation is illegal. (the division should not to be zero)");
+            return null;
+        }
+    }
+
+    /**
+     * Maps zero to 1.0 and all non-zero values to 0.0 (in-place).
+     */
+    @Override
+    public void noti() {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = data[i] == 0.0 ? 1.0 : 0.0;
+        }
+    }
+
+    @Override
+    public Matrix not() {
+        Matrix dump = this.dup();
+        dump.noti();
+        return dump;
+    }
+
+    /**
+     * Maps zero to 0.0 and all non-zero values to 1.0 (in-place).
+     */
+    @Override
+    public void truthi() {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = data[i] != 0.0 ? 1.0 : 0.0;
+        }
+    }
+
+    @Override
+    public Matrix truth() {
+        Matrix dump = this.dup();
+        dump.truthi();
+        return dump;
+    }
+
+    /**
+     * Keeps the elements where {@code where} is non-zero, and sets the
+     * others to zero (in-place).
+     */
+    @Override
+    public void selecti(final Matrix where) {
+        double[] w = array(where);
+        for (int i = 0; i < data.length; i++) {
+            if (w[i] == 0.0) {
+                data[i] = 0.0;
+            }
+        }
+    }
+
+    @Override
+    public Matrix select(final Matrix where) {
+        Matrix dump = this.dup();
+        dump.selecti(where);
+        return dump;
+    }
+
+    @Override
+    public double min() {
+        return data[argmin()];
+    }
+
+    @Override
+    public int argmin() {
+        int index = 0;
+        for (int i = 1; i < data.length; i++) {
+            if (data[i] < data[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public double max() {
+        return data[argmax()];
+    }
+
+    @Override
+    public int argmax() {
+        int index = 0;
+        for (int i = 1; i < data.length; i++) {
+            if (data[i] > data[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public double sum() {
+        double sum = 0.0;
+        for (double v : data) {
+            sum += v;
+        }
+        return sum;
+    }
+
+    @Override
+    public Matrix rsum() {
+        InMemoryJavaMatrix matrix = create(rows, 1);
+        for (int k = 0; k < data.length; k += rows) {
+            for (int i = 0; i < rows; i++) {
+                matrix.data[i] += data[k + i];
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public double rsum(int row) {
+        if (row < rows) {
+            double temp = 0.0;
+            for (int k = row; k < data.length; k += rows) {
+                temp += data[k];
+            }
+            return temp;
+        } else {
+            errorProcessor.error("Row overflow.");
+            throw new UnsupportedOperationException("Row overflow.");
+        }
+    }
+
+    @Override
+    public Matrix csum() {
+        InMemoryJavaMatrix matrix = create(1, columns);
+        for (int j = 0; j < columns; j++) {
+            matrix.data[j] = this.csum(j);
+        }
+        return matrix;
+    }
+
+    @Override
+    public double csum(int column) {
+        if (column < columns) {
+            double temp = 0.0;
+            for (int k = column * rows, end = k + rows; k < end; k++) {
+                temp += data[k];
+            }
+            return temp;
+        } else {
+            errorProcessor.error("Column overflow.");
+            throw new UnsupportedOperationException("Column overflow.");
+        }
+    }
+
+    @Override
+    public double prod() {
+        double prod = 1.0;
+        for (double v : data) {
+            prod *= v;
+        }
+        return prod;
+    }
+
+    @Override
+    public double mean() {
+        return sum() / data.length;
+    }
+
+    @Override
+    public Matrix rmean() {
+        Matrix matrix = this.rsum();
+        matrix.divi(columns);
+        return matrix;
+    }
+
+    @Override
+    public double rmean(int row) {
+        return this.rsum(row) / columns;
+    }
+
+    @Override
+    public Matrix cmean() {
+        Matrix matrix = this.csum();
+        matrix.divi(rows);
+        return matrix;
+    }
+
+    @Override
+    public Matrix cstd() {
+        InMemoryJavaMatrix std = create(1, columns);
+        for (int j = 0; j < columns; j++) {
+            double mean = this.cmean(j);
+            double var = 0.0;
+            for (int k = j * rows, end = k + rows; k < end; k++) {
+                var += (data[k] - mean) * (data[k] - mean);
+            }
+            std.data[j] = Math.sqrt(var / rows);
+        }
+        return std;
+    }
+
+    @Override
+    public double cmean(int column) {
+        return this.csum(column) / rows;
+    }
+
+    @Override
+    public Matrix rnorm() {
+        Matrix rsum = this.rsum();
+        return this.rdiv(rsum);
+    }
+
+    @Override
+    public void rnormi() {
+        Matrix rsum = this.rsum();
+        this.rdivi(rsum);
+    }
+
+    @Override
+    public Matrix cnorm() {
+        Matrix csum = this.csum();
+        return this.cdiv(csum);
+    }
+
+    @Override
+    public void cnormi() {
+        Matrix csum = this.csum();
+        this.cdivi(csum);
+    }
+
+    @Override
+    public void rdivi(Matrix m) {
+        if (rows == m.getRowsNum() && m.getColumnsNum() == 1) {
+            double[] d = array(m);
+            for (int k = 0; k < data.length; k += rows) {
+                for (int i = 0; i < rows; i++) {
+                    data[k + i] /= d[i];
+                }
+            }
+        } else {
+            errorProcessor.error("Error: matrix dimension does not matches");
+        }
+    }
+
+    @Override
+    public Matrix rdiv(Matrix m) {
+        if (rows == m.getRowsNum() && m.getColumnsNum() == 1) {
+            Matrix copy = this.dup();
+            copy.rdivi(m);
+            return copy;
+        } else {
+            errorProcessor.error("Error: matrix dimension does not matches");
+            return null;
+        }
+    }
+
+    @Override
+    public void cdivi(Matrix m) {
+        if (columns == m.getColumnsNum() && m.getRowsNum() == 1) {
+            double[] d = array(m);
+            for (int j = 0; j < columns; j++) {
+                double s = 1.0 / d[j];
+                for (int k = j * rows, end = k + rows; k < end; k++) {
+                    data[k] *= s;
+                }
+            }
+        } else {
+            errorProcessor.error("Error: matrix dimension does not matches");
+        }
+    }
+
+    @Override
+    public Matrix cdiv(Matrix m) {
+        if (columns == m.getColumnsNum() && m.getRowsNum() == 1) {
+            Matrix copy = this.dup();
+            copy.cdivi(m);
+            return copy;
+        } else {
+            errorProcessor.error("Error: matrix dimension does not matches");
+            return null;
+        }
+    }
+
+    @Override
+    public double norm2() {
+        return Math.sqrt(dot(this));
+    }
+
+    /**
+     * The maximum norm of the matrix (maximal absolute value of the elements).
+     */
+    @Override
+    public double normMax() {
+        double max = 0.0;
+        for (double v : data) {
+            max = Math.max(max, Math.abs(v));
+        }
+        return max;
+    }
+
+    @Override
+    public double norm1() {
+        double norm = 0.0;
+        for (double v : data) {
+            norm += Math.abs(v);
+        }
+        return norm;
+    }
+
+    @Override
+    public double euclideanDis(final Matrix other) {
+        double[] o = array(other);
+        double dis = 0.0;
+        for (int i = 0; i < data.length; i++) {
+            double diff = data[i] - o[i];
+            dis += diff * diff;
+        }
+        return Math.sqrt(dis);
+    }
+
+    @Override
+    public double normDis(final Matrix other) {
+        double[] o = array(other);
+        double dis = 0.0;
+        for (int i = 0; i < data.length; i++) {
+            dis += Math.abs(data[i] - o[i]);
+        }
+        return dis;
+    }
+
+    @Override
+    public double norm2Dis(final Matrix other) {
+        return this.euclideanDis(other);
+    }
+
+    @Override
+    public Matrix sort() {
+        double[] sorted = data.clone();
+        Arrays.sort(sorted);
+        return new InMemoryJavaMatrix(rows, columns, sorted, errorProcessor);
+    }
+
+    @Override
+    public int[] sortingPermutation() {
+        Integer[] indices = new Integer[data.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(data[a], data[b]);
+            }
+        });
+        int[] permutation = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            permutation[i] = indices[i];
+        }
+        return permutation;
+    }
+
+    /**
+     * Computes the inverse by a blocked LU decomposition, solving the columns
+     * of the inverse in parallel.
+     */
+    /**
+     * @throws ArithmeticException if the matrix is not square or is singular
+     */
+    @Override
+    public Matrix inverse() {
+        if (!this.isSquare()) {
+            throw arithmeticError("the matrix should be square.");
+        }
+        LUDecomposition lu = new LUDecomposition(data, rows);
+        if (lu.isSingular()) {
+            throw arithmeticError("the matrix is singular.");
+        }
+        return new InMemoryJavaMatrix(rows, rows, lu.inverseArray(), errorProcessor);
+    }
+
+    /**
+     * Computes the determinant by a blocked LU decomposition.
+     *
+     * @throws ArithmeticException if the matrix is not square
+     */
+    @Override
+    public double det() {
+        if (!this.isSquare()) {
+            throw arithmeticError("the matrix should be square.");
+        }
+        return new LUDecomposition(data, rows).det();
+    }
+
+    /**
+     * Reports the error to the error processor, if any, and returns the exception to throw.
+     */
+    private ArithmeticException arithmeticError(String message) {
+        if (errorProcessor != null) {
+            errorProcessor.error(message);
+        }
+        return new ArithmeticException(message);
+    }
+
+    /**
+     * Generate string representation of the matrix.
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+
+        s.append("[");
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                s.append(get(i, j));
+                if (j < columns - 1) {
+                    s.append(", ");
+                }
+            }
+            if (i < rows - 1) {
+                s.append("; \n");
+            }
+        }
+
+        s.append("]");
+
+        return s.toString();
+    }
+
+    @Override
+    public Matrix load(File file) {
+        try {
+            Matrix matrix = null;
+            int index = 0;
+            for (String line : Files.readLines(file, Charsets.UTF_8)) {
+                if (index == 0) {
+                    StringTokenizer token = new StringTokenizer(line, "\t");
+                    int m = Integer.parseInt(token.nextToken());
+                    int n = Integer.parseInt(token.nextToken());
+                    matrix = new InMemoryJavaMatrix(m, n, errorProcessor);
+                } else {
+                    int j = 0;
+                    for (String item : Splitter.on(",").trimResults()
+                            .omitEmptyStrings().split(line)) {
+                        matrix.put(index - 1, j, Double.parseDouble(item));
+                        j++;
+                    }
+                }
+                index++;
+            }
+            return matrix;
+        } catch (IOException e) {
+            errorProcessor.error("failed to load the matrix: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public void dump(Writer writer) {
+        try {
+            writer.write(this.dumps());
+            writer.close();
+        } catch (IOException e) {
+            errorProcessor.error("failed to dump the matrix: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String dumps() {
+        StringBuilder text = new StringBuilder();
+        text.append(rows).append("\t").append(columns).append("\n");
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                text.append(get(i, j));
+                text.append(j < columns - 1 ? ", " : "\n");
+            }
+        }
+        return text.toString();
+    }
+}
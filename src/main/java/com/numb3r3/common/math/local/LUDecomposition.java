@@ -0,0 +1,209 @@
+package com.numb3r3.common.math.local;
+
+import com.numb3r3.common.concurrent.Parallel;
+import com.numb3r3.common.math.Matrix;
+
+/**
+ * LU decomposition with partial pivoting, {@code P A = L U}, of a square matrix stored column-major in a flat array.
+ * <p/>
+ * The factorization is blocked and right-looking: a panel of {@link #BLOCK_SIZE} columns is factored, then the
+ * remaining columns are updated with it in parallel, each column independently. All inner loops run down columns,
+ * i.e. along the storage order.
+ *
+ * @author numb3r3
+ */
+public class LUDecomposition extends MatrixDecomposition {
+
+    // number of columns of a panel
+    private static final int BLOCK_SIZE = 64;
+
+    // minimum number of multiply-adds per parallel task
+    private static final int MIN_TASK_WORK = 1 << 16;
+
+    private final double[] lu;
+    // row k was swapped with row swaps[k] >= k at step k
+    private final int[] swaps;
+    private int pivSign = 1;
+    private boolean singular = false;
+
+    /**
+     * Decompose a square matrix
+     *
+     * @param data column-major elements of the matrix, which are copied
+     * @param n    dimension of the matrix
+     */
+    public LUDecomposition(double[] data, int n) {
+        super(n);
+
+        if (data.length != n * n)
+            throw new IllegalArgumentException("the matrix should be square.");
+
+        this.lu = data.clone();
+        this.swaps = new int[n];
+
+        decompose();
+    }
+
+    /**
+     * Decompose a square matrix of any backend
+     */
+    public LUDecomposition(Matrix matrix) {
+        this(matrix.toArray(), matrix.getRowsNum());
+    }
+
+    /**
+     * @return whether the matrix is (exactly) singular
+     */
+    @Override
+    public boolean isSingular() {
+        return singular;
+    }
+
+    /**
+     * @return the determinant of the matrix
+     */
+    @Override
+    public double det() {
+        if (singular)
+            return 0.0;
+
+        double det = pivSign;
+        for (int i = 0; i < n; i++)
+            det *= lu[i + i * n];
+
+        return det;
+    }
+
+    @Override
+    public double logDet() {
+        if (singular)
+            return Double.NEGATIVE_INFINITY;
+
+        int sign = pivSign;
+        double res = 0.0;
+        for (int i = 0; i < n; i++) {
+            double u = lu[i + i * n];
+            if (u < 0)
+                sign = -sign;
+            res += Math.log(Math.abs(u));
+        }
+
+        return sign > 0 ? res : Double.NaN;
+    }
+
+    /**
+     * Solve {@code L U x = P b} in place
+     */
+    @Override
+    protected void solveInPlace(double[] x, int off) {
+        for (int k = 0; k < n; k++) {
+            int p = swaps[k];
+            if (p != k) {
+                double t = x[off + p];
+                x[off + p] = x[off + k];
+                x[off + k] = t;
+            }
+        }
+
+        // forward substitution with unit lower triangle
+        for (int k = 0; k < n; k++) {
+            double xk = x[off + k];
+            if (xk == 0)
+                continue;
+
+            int col = k * n;
+            for (int i = k + 1; i < n; i++)
+                x[off + i] -= lu[col + i] * xk;
+        }
+
+        // back substitution with upper triangle
+        for (int k = n - 1; k >= 0; k--) {
+            int col = k * n;
+            double xk = x[off + k] / lu[col + k];
+            x[off + k] = xk;
+
+            if (xk == 0)
+                continue;
+
+            for (int i = 0; i < k; i++)
+                x[off + i] -= lu[col + i] * xk;
+        }
+    }
+
+    private void decompose() {
+        for (int k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+            final int start = k0, end = Math.min(k0 + BLOCK_SIZE, n);
+
+            // factor the panel of columns [start, end), swapping whole rows
+            for (int k = start; k < end; k++) {
+                int col = k * n;
+
+                int p = k;
+                double max = Math.abs(lu[col + k]);
+                for (int i = k + 1; i < n; i++) {
+                    double v = Math.abs(lu[col + i]);
+                    if (v > max) {
+                        max = v;
+                        p = i;
+                    }
+                }
+
+                swaps[k] = p;
+
+                if (max == 0) {
+                    singular = true;
+                    continue;
+                }
+
+                if (p != k) {
+                    for (int j = 0; j < n * n; j += n) {
+                        double t = lu[j + p];
+                        lu[j + p] = lu[j + k];
+                        lu[j + k] = t;
+                    }
+                    pivSign = -pivSign;
+                }
+
+                double pivot = lu[col + k];
+                for (int i = k + 1; i < n; i++)
+                    lu[col + i] /= pivot;
+
+                for (int j = k + 1; j < end; j++)
+                    eliminate(k, j);
+            }
+
+            if (end == n)
+                break;
+
+            // apply the panel to the remaining columns: a triangular solve above the panel, a rank update below
+            long work = (long) (n - end) * (n - start) * (end - start);
+            Parallel.blockingRanges(Parallel.split(end, n, numTasks(work)), new Parallel.RangeOperation() {
+
+                @Override
+                public void perform(int from, int to) {
+                    for (int j = from; j < to; j++)
+                        for (int k = start; k < end; k++)
+                            eliminate(k, j);
+                }
+            });
+        }
+    }
+
+    /**
+     * Eliminate the entries of column {@code j} below row {@code k} with column {@code k} of {@code L}
+     */
+    private void eliminate(int k, int j) {
+        int colK = k * n, colJ = j * n;
+
+        double u = lu[colJ + k];
+        if (u == 0)
+            return;
+
+        for (int i = k + 1; i < n; i++)
+            lu[colJ + i] -= lu[colK + i] * u;
+    }
+
+    static int numTasks(long work) {
+        return (int) Math.max(1, Math.min(Parallel.numCores(), work / MIN_TASK_WORK));
+    }
+}
@@ -0,0 +1,151 @@
+package com.numb3r3.common.math.local;
+
+import com.numb3r3.common.concurrent.Parallel;
+import com.numb3r3.common.math.Matrix;
+
+/**
+ * A factorization of a square matrix {@code A}, computed once and reused for its determinant, for solving linear
+ * systems and for quadratic forms {@code x^T A^-1 x}. Each of these costs at most one triangular solve per
+ * right-hand side, instead of a new factorization or an explicit inverse.
+ * <p/>
+ * Elements are exchanged as column-major arrays, the storage order of both {@link Matrix} backends.
+ *
+ * @author numb3r3
+ * @see LUDecomposition
+ * @see SPDDecomposition
+ */
+public abstract class MatrixDecomposition {
+
+    // dimension of the matrix
+    protected final int n;
+
+    protected MatrixDecomposition(int n) {
+        this.n = n;
+    }
+
+    /**
+     * @return dimension of the matrix
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * @return the determinant of the matrix
+     */
+    public abstract double det();
+
+    /**
+     * @return the natural logarithm of the determinant, computed without overflow; {@code NaN} if the determinant is
+     * negative
+     */
+    public abstract double logDet();
+
+    /**
+     * @return whether the factorization cannot be used to solve systems
+     */
+    public abstract boolean isSingular();
+
+    /**
+     * Solve {@code A x = b} in place for the right-hand side stored at {@code x[off, off + n)}
+     */
+    protected abstract void solveInPlace(double[] x, int off);
+
+    protected void checkSingular() {
+        if (isSingular())
+            throw new ArithmeticException("the matrix is singular.");
+    }
+
+    /**
+     * Solve {@code A x = b}
+     *
+     * @param b right-hand side, which is not modified
+     * @return the solution {@code x}
+     */
+    public double[] solve(double[] b) {
+        if (b.length != n)
+            throw new IllegalArgumentException("the right-hand side should have " + n + " elements.");
+        checkSingular();
+
+        double[] x = b.clone();
+        solveInPlace(x, 0);
+
+        return x;
+    }
+
+    /**
+     * Solve {@code A X = B}, the columns in parallel
+     *
+     * @param b right-hand sides, of {@code n} rows
+     * @return the solutions {@code X}
+     */
+    public Matrix solve(Matrix b) {
+        if (b.getRowsNum() != n)
+            throw new IllegalArgumentException("the right-hand side should have " + n + " rows.");
+        checkSingular();
+
+        double[] x = b.toArray();
+        solveColumns(x, b.getColumnsNum());
+
+        return MatrixFactory.wrap(n, b.getColumnsNum(), x);
+    }
+
+    /**
+     * @return the column-major elements of the inverse {@code A^-1}, whose columns are solved in parallel
+     */
+    public double[] inverseArray() {
+        checkSingular();
+
+        double[] inv = new double[n * n];
+        for (int i = 0; i < n; i++)
+            inv[i + i * n] = 1.0;
+
+        solveColumns(inv, n);
+
+        return inv;
+    }
+
+    /**
+     * @return the inverse {@code A^-1}
+     */
+    public Matrix inverse() {
+        return MatrixFactory.wrap(n, n, inverseArray());
+    }
+
+    /**
+     * @return the quadratic form {@code x^T A^-1 x}, i.e. the squared Mahalanobis distance of {@code x} from zero
+     * when {@code A} is a covariance matrix
+     */
+    public double mahalanobis(double[] x) {
+        double[] y = solve(x);
+
+        double res = 0.0;
+        for (int i = 0; i < n; i++)
+            res += x[i] * y[i];
+
+        return res;
+    }
+
+    /**
+     * @param x a row or column vector of {@code n} elements
+     * @return the quadratic form {@code x^T A^-1 x}
+     */
+    public double mahalanobis(Matrix x) {
+        if (x.getLength() != n)
+            throw new IllegalArgumentException("the vector should have " + n + " elements.");
+
+        return mahalanobis(x.toArray());
+    }
+
+    private void solveColumns(final double[] x, int columns) {
+        int tasks = LUDecomposition.numTasks((long) columns * n * n);
+        Parallel.blockingRanges(Parallel.split(0, columns, tasks), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int j = from; j < to; j++)
+                    solveInPlace(x, j * n);
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package com.numb3r3.common.math.local;
+
+import com.numb3r3.common.math.Matrix;
+import org.jblas.DoubleMatrix;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates {@link Matrix} instances on the backend that suits their size.
+ * <p/>
+ * Matrices smaller than {@link #SMALL_SIZE} elements, for which the JNI overhead of jblas dominates, and all matrices
+ * when the jblas native libraries cannot be loaded, are {@link InMemoryJavaMatrix}; the others are
+ * {@link InMemoryJBlasMatrix}. Both backends store their elements column-major and accept each other as operands.
+ *
+ * @author numb3r3
+ */
+public class MatrixFactory {
+
+    /**
+     * Number of elements below which the pure-Java backend is used
+     */
+    public static final int SMALL_SIZE = 64 * 64;
+
+    private static final boolean JBLAS_AVAILABLE = loadJBlas();
+
+    private static boolean loadJBlas() {
+        try {
+            double[] x = {1.0};
+            org.jblas.NativeBlas.ddot(1, x, 0, 1, x, 0, 1);
+            return true;
+        } catch (Throwable e) {
+            Logger.getLogger(MatrixFactory.class.getName())
+                    .log(Level.INFO, "jblas native libraries are not available, using the pure-Java backend");
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the jblas native libraries are loaded
+     */
+    public static boolean isJBlasAvailable() {
+        return JBLAS_AVAILABLE;
+    }
+
+    /**
+     * @return whether matrices of the given dimensions are created on the jblas backend
+     */
+    public static boolean useJBlas(int rows, int columns) {
+        return JBLAS_AVAILABLE && (long) rows * columns >= SMALL_SIZE;
+    }
+
+    public static Matrix zeros(final int rows, final int columns) {
+        if (useJBlas(rows, columns))
+            return InMemoryJBlasMatrix.zeros(rows, columns);
+        return InMemoryJavaMatrix.zeros(rows, columns);
+    }
+
+    public static Matrix zeros(final int length) {
+        return zeros(length, 1);
+    }
+
+    public static Matrix ones(final int rows, final int columns) {
+        if (useJBlas(rows, columns))
+            return InMemoryJBlasMatrix.ones(rows, columns);
+        return InMemoryJavaMatrix.ones(rows, columns);
+    }
+
+    public static Matrix ones(final int length) {
+        return ones(length, 1);
+    }
+
+    public static Matrix eye(final int n) {
+        if (useJBlas(n, n))
+            return InMemoryJBlasMatrix.eye(n);
+        return InMemoryJavaMatrix.eye(n);
+    }
+
+    public static Matrix rand(final int rows, final int columns) {
+        if (useJBlas(rows, columns))
+            return InMemoryJBlasMatrix.rand(rows, columns, null);
+        return InMemoryJavaMatrix.rand(rows, columns, null);
+    }
+
+    public static Matrix randn(final int rows, final int columns) {
+        if (useJBlas(rows, columns))
+            return InMemoryJBlasMatrix.randn(rows, columns);
+        return InMemoryJavaMatrix.randn(rows, columns);
+    }
+
+    /**
+     * Create a matrix on the given column-major elements, which are not copied.
+     */
+    public static Matrix wrap(final int rows, final int columns, final double[] data) {
+        if (useJBlas(rows, columns))
+            return new InMemoryJBlasMatrix(new DoubleMatrix(rows, columns, data), null);
+        return new InMemoryJavaMatrix(rows, columns, data, null);
+    }
+
+    /**
+     * @return the column-major elements of a matrix, shared rather than copied
+     * when its backend stores them in an array; they must not be modified.
+     */
+    public static double[] array(Matrix matrix) {
+        Object data = matrix.getData();
+        if (data instanceof DoubleMatrix)
+            return ((DoubleMatrix) data).data;
+        if (data instanceof double[])
+            return (double[]) data;
+        return matrix.toArray();
+    }
+
+    /**
+     * Create a column vector holding a copy of the given values.
+     */
+    public static Matrix arrayMatrix(double[] values) {
+        if (useJBlas(values.length, 1))
+            return InMemoryJBlasMatrix.arrayMatrix(values);
+        return InMemoryJavaMatrix.arrayMatrix(values);
+    }
+
+    /**
+     * Create a matrix holding a copy of the given rows.
+     */
+    public static Matrix create(double[][] values) {
+        int rows = values.length, columns = values[0].length;
+
+        Matrix matrix = zeros(rows, columns);
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                matrix.put(i, j, values[i][j]);
+
+        return matrix;
+    }
+}
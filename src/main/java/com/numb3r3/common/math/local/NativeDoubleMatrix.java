@@ -1,5 +1,7 @@
 package com.numb3r3.common.math.local;
 
+import com.numb3r3.common.data.DocumentMatrixReader;
+
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,50 +22,16 @@ public class NativeDoubleMatrix {
                 row[i][j] = 0;
     }
 
-    // import matrix from file
+    /**
+     * Import a matrix from a file in the "normal" or "special" format, see {@link DocumentMatrixReader}. The file is
+     * parsed in parallel into the rows; large sparse files should rather be read as a {@code SparseMatrix}.
+     */
     public NativeDoubleMatrix(int numOfRow, int numOfColumn, String fileType, String file) throws Exception {
-        String line;
-        int lineNumber = 0;
         this.numOfRow = numOfRow;
         this.numOfColumn = numOfColumn;
         row = new double[numOfRow][numOfColumn];
 
-        BufferedReader fileReader = new BufferedReader(new FileReader(file));
-
-        if (fileType.toLowerCase() == "normal") {
-            while ((line = fileReader.readLine()) != null) {
-                String[] elements = line.split("\\s+");
-                for (int j = 0; j < elements.length; j++) {
-                    row[lineNumber][j] = Integer.valueOf(elements[j]);
-                }
-                lineNumber++;
-            }
-        } else if (fileType.toLowerCase() == "special") {
-            for (int i = 0; i < numOfRow; i++)
-                for (int j = 0; j < numOfColumn; j++)
-                    row[i][j] = 0;
-
-            String docLine;
-            while ((line = fileReader.readLine()) != null) {
-                docLine = fileReader.readLine();
-                String[] elements = line.split("\\s+");
-                int docWords = Integer.valueOf(elements[0]);
-
-                String[] wordByCount = docLine.split("\\s+");
-
-                if (docWords * 2 != wordByCount.length) {
-                    System.err.println("Matrix File Corrupted");
-                    System.err.println(line);
-                    System.exit(0);
-                }
-
-                for (int i = 0; i < docWords; i++) {
-                    row[lineNumber][Integer.valueOf(wordByCount[2 * i])] = Integer.valueOf(wordByCount[2 * i + 1]);
-                }
-                lineNumber++;
-            }
-        }
-        fileReader.close();
+        new DocumentMatrixReader(file, fileType, numOfRow, numOfColumn).readInto(row);
     }
 
     public int getNumOfRow() {
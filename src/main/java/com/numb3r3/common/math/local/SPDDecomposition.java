@@ -0,0 +1,197 @@
+package com.numb3r3.common.math.local;
+
+import com.numb3r3.common.data.CholeskyDecomposition;
+import com.numb3r3.common.math.Matrix;
+
+/**
+ * Cholesky decomposition {@code A = L L^T} of a symmetric positive definite matrix stored column-major in a flat
+ * array, such as a covariance matrix, as a {@link MatrixDecomposition} of the {@link Matrix} backends.
+ * <p/>
+ * It costs half of an LU decomposition, and the quadratic form {@code x^T A^-1 x = |L^-1 x|^2} needs a single
+ * forward substitution. Only the lower triangle of the matrix is read. The factorization itself is the blocked,
+ * parallel one of {@link CholeskyDecomposition}, which works on the rows of a
+ * {@link com.numb3r3.common.data.DenseMatrix}; this class adds the column-major storage of the backends and the
+ * triangular solves over blocks of points used by {@link com.numb3r3.common.math.stat.MultivariateGaussian}.
+ *
+ * @author numb3r3
+ */
+public class SPDDecomposition extends MatrixDecomposition {
+
+    // column-major lower triangular factor; the strict upper triangle is zero
+    private final double[] l;
+    private final boolean spd;
+
+    /**
+     * Decompose a symmetric matrix
+     *
+     * @param data column-major elements of the matrix, which are copied
+     * @param n    dimension of the matrix
+     */
+    public SPDDecomposition(double[] data, int n) {
+        super(n);
+
+        if (data.length != n * n)
+            throw new IllegalArgumentException("the matrix should be square.");
+
+        this.l = data.clone();
+        this.spd = decompose();
+    }
+
+    /**
+     * Decompose a symmetric matrix of any backend
+     */
+    public SPDDecomposition(Matrix matrix) {
+        this(matrix.toArray(), matrix.getRowsNum());
+    }
+
+    /**
+     * @return whether the matrix is (numerically) symmetric positive definite; the other methods require it
+     */
+    public boolean isSPD() {
+        return spd;
+    }
+
+    @Override
+    public boolean isSingular() {
+        return !spd;
+    }
+
+    /**
+     * @return the lower triangular factor {@code L}
+     */
+    public Matrix getL() {
+        return MatrixFactory.wrap(n, n, l.clone());
+    }
+
+    @Override
+    public double det() {
+        checkSingular();
+
+        double det = 1.0;
+        for (int i = 0; i < n; i++)
+            det *= l[i + i * n];
+
+        return det * det;
+    }
+
+    @Override
+    public double logDet() {
+        checkSingular();
+
+        double res = 0.0;
+        for (int i = 0; i < n; i++)
+            res += Math.log(l[i + i * n]);
+
+        return 2 * res;
+    }
+
+    /**
+     * @return the quadratic form {@code x^T A^-1 x}, by one forward substitution
+     */
+    @Override
+    public double mahalanobis(double[] x) {
+        if (x.length != n)
+            throw new IllegalArgumentException("the vector should have " + n + " elements.");
+        checkSingular();
+
+        double[] y = x.clone();
+        solveL(y, 0);
+
+        double res = 0.0;
+        for (int i = 0; i < n; i++)
+            res += y[i] * y[i];
+
+        return res;
+    }
+
+    /**
+     * Solve {@code L y = b} in place for the right-hand side stored at {@code x[off, off + n)}
+     */
+    public void solveL(double[] x, int off) {
+        for (int k = 0; k < n; k++) {
+            int col = k * n;
+            double xk = x[off + k] / l[col + k];
+            x[off + k] = xk;
+
+            if (xk == 0)
+                continue;
+
+            for (int i = k + 1; i < n; i++)
+                x[off + i] -= l[col + i] * xk;
+        }
+    }
+
+    /**
+     * Solve {@code L^T x = y} in place for the right-hand side stored at {@code x[off, off + n)}
+     */
+    public void solveLT(double[] x, int off) {
+        for (int k = n - 1; k >= 0; k--) {
+            int col = k * n;
+            double sum = x[off + k];
+            for (int i = k + 1; i < n; i++)
+                sum -= l[col + i] * x[off + i];
+            x[off + k] = sum / l[col + k];
+        }
+    }
+
+    /**
+     * Solve {@code L y_i = b_i} in place for all rows {@code b_i} of a column-major block of {@code rows x n}
+     * elements, i.e. {@code Y = B L^-T}. Each step updates a whole column of the block, so the substitution runs along
+     * contiguous memory for all rows at once.
+     */
+    public void solveRows(double[] b, int rows) {
+        if (b.length < rows * n)
+            throw new IllegalArgumentException("the block should have " + rows * n + " elements.");
+        checkSingular();
+
+        for (int k = 0; k < n; k++) {
+            int col = k * n, bk = k * rows;
+
+            double d = l[col + k];
+            for (int r = 0; r < rows; r++)
+                b[bk + r] /= d;
+
+            for (int i = k + 1; i < n; i++) {
+                double lik = l[col + i];
+                if (lik == 0)
+                    continue;
+
+                int bi = i * rows;
+                for (int r = 0; r < rows; r++)
+                    b[bi + r] -= lik * b[bk + r];
+            }
+        }
+    }
+
+    @Override
+    protected void solveInPlace(double[] x, int off) {
+        solveL(x, off);
+        solveLT(x, off);
+    }
+
+    /**
+     * Factor the lower triangle by the blocked kernel of {@link CholeskyDecomposition}, through rows copied out of
+     * the column-major storage and back.
+     *
+     * @return false if the matrix is not positive definite
+     */
+    private boolean decompose() {
+        double[][] a = new double[n][n];
+        for (int j = 0; j < n; j++) {
+            int col = j * n;
+            for (int i = j; i < n; i++)
+                a[i][j] = l[col + i];
+        }
+
+        if (!CholeskyDecomposition.decompose(a, n))
+            return false;
+
+        for (int j = 0; j < n; j++) {
+            int col = j * n;
+            for (int i = 0; i < n; i++)
+                l[col + i] = a[i][j];
+        }
+
+        return true;
+    }
+}
@@ -2,6 +2,8 @@ package com.numb3r3.common.math.stat;
 
 import com.numb3r3.common.math.Matrix;
 import com.numb3r3.common.math.local.InMemoryJBlasMatrix;
+import com.numb3r3.common.math.local.LUDecomposition;
+import com.numb3r3.common.math.local.MatrixDecomposition;
 
 /**
  * Created with IntelliJ IDEA. User: numb3r3 Date: 13-3-18 Time: 上午10:45
@@ -39,6 +41,7 @@ public class Gaussian {
     private double sigma = 1.0;
     private Matrix mu = null;
     private Matrix cox = null;
+    private MultivariateGaussian mvn = null;
 
     public Gaussian(double mean, double sigma) {
         this.mean = mean;
@@ -111,25 +114,29 @@ public class Gaussian {
         return Math.exp(-x * x / 2) / Math.sqrt(2 * Math.PI);
     }
 
+    /**
+     * Returns the density of N(mu, cox) at a point, by one LU decomposition of
+     * the covariance matrix per call; to score many points, prefer
+     * {@link MultivariateGaussian}, which keeps its decomposition.
+     */
     public static double mphi(Matrix value, Matrix mu, Matrix cox) {
         int k = value.getLength();
-        double det = cox.det();
+        MatrixDecomposition lu = decompose(cox);
 
         double part1 = Math.exp(-0.5 * k * Math.log(2 * Math.PI));
 
-        double part2 = Math.pow(det, -0.5);
+        double part2 = Math.pow(lu.det(), -0.5);
 
         Matrix dev = value.sub(mu);
 
-        double part3 = Math.exp(-0.5
-                * (dev.transpose().product(cox.inverse())).dot(dev));
+        double part3 = Math.exp(-0.5 * lu.mahalanobis(dev));
         return part1 * part2 * part3;
 
     }
 
     public static double mphi(Matrix value, Matrix mu, Matrix cox, Matrix inv) {
         int k = value.getLength();
-        double det = cox.det();
+        double det = decompose(cox).det();
 
         double part1 = Math.exp(-0.5 * k * Math.log(2 * Math.PI));
 
@@ -142,6 +149,27 @@ public class Gaussian {
 
     }
 
+    private static MatrixDecomposition decompose(Matrix cox) {
+        if (cox instanceof InMemoryJBlasMatrix)
+            return ((InMemoryJBlasMatrix) cox).lu();
+        return new LUDecomposition(cox);
+    }
+
+    /**
+     * Returns the density of this multivariate Gaussian at a point. The
+     * decomposition of the covariance matrix is computed on the first call
+     * and reused.
+     */
+    public double mphi(Matrix value) {
+        return multivariate().pdf(value);
+    }
+
+    private MultivariateGaussian multivariate() {
+        if (mvn == null)
+            mvn = new MultivariateGaussian(mu, cox);
+        return mvn;
+    }
+
     /* return phi(x, mu, signma) = Gaussian pdf with mean mu and stddev sigma */
     public static double phi(double x, double mu, double sigma) {
         return phi((x - mu) / sigma) / sigma;
@@ -0,0 +1,232 @@
+package com.numb3r3.common.math.stat;
+
+import com.numb3r3.common.concurrent.Parallel;
+import com.numb3r3.common.math.Matrix;
+import com.numb3r3.common.math.local.SPDDecomposition;
+import com.numb3r3.common.math.local.MatrixFactory;
+
+/**
+ * Multivariate normal distribution N(mu, Sigma).
+ * <p/>
+ * The Cholesky decomposition of the covariance matrix is computed once, when
+ * the parameters are set, together with the normalizing constant. Evaluating
+ * the density of a point then costs one triangular solve, instead of a
+ * determinant and an inverse of the covariance matrix per point as in
+ * {@link Gaussian#mphi(Matrix, Matrix, Matrix)}.
+ *
+ * @author numb3r3
+ */
+public class MultivariateGaussian implements MultivariateDistribution {
+
+    /**
+     * The constant log(2 pi)
+     */
+    private static final double LOG_2PI = Math.log(2 * Math.PI);
+
+    // rows of a block scored at once by logPdfs
+    private static final int BLOCK_ROWS = 128;
+
+    // minimum number of multiply-adds per parallel task
+    private static final int MIN_TASK_WORK = 1 << 16;
+
+    private int dimension = 0;
+    private double[] mu = null;
+    private Matrix covariance = null;
+    private SPDDecomposition cholesky = null;
+    // -0.5 * (d * log(2 pi) + log(det(Sigma)))
+    private double logNormalizer;
+
+    /**
+     * Create a distribution whose parameters are to be set by
+     * {@link #setUsingData(Matrix)}.
+     */
+    public MultivariateGaussian() {
+    }
+
+    /**
+     * @param mu         the mean vector, of d elements
+     * @param covariance the d x d covariance matrix
+     * @throws IllegalArgumentException if the covariance matrix is not
+     *                                  positive definite
+     */
+    public MultivariateGaussian(Matrix mu, Matrix covariance) {
+        if (!setParameters(mu.toArray(), covariance))
+            throw new IllegalArgumentException("the covariance matrix is not positive definite.");
+    }
+
+    private boolean setParameters(double[] mu, Matrix covariance) {
+        if (covariance.getRowsNum() != mu.length || covariance.getColumnsNum() != mu.length)
+            throw new IllegalArgumentException("the covariance matrix should be " + mu.length + "x" + mu.length + ".");
+
+        SPDDecomposition cholesky = new SPDDecomposition(covariance);
+        if (!cholesky.isSPD())
+            return false;
+
+        this.dimension = mu.length;
+        this.mu = mu;
+        this.covariance = covariance;
+        this.cholesky = cholesky;
+        this.logNormalizer = -0.5 * (dimension * LOG_2PI + cholesky.logDet());
+
+        return true;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public Matrix getMean() {
+        return MatrixFactory.wrap(dimension, 1, mu.clone());
+    }
+
+    public Matrix getCovariance() {
+        return covariance;
+    }
+
+    /**
+     * @return the cached Cholesky decomposition of the covariance matrix
+     */
+    public SPDDecomposition getDecomposition() {
+        return cholesky;
+    }
+
+    /**
+     * @return the squared Mahalanobis distance of a point from the mean
+     */
+    public double mahalanobis(double[] x) {
+        checkPoint(x.length);
+
+        double[] dev = new double[dimension];
+        for (int i = 0; i < dimension; i++)
+            dev[i] = x[i] - mu[i];
+
+        return cholesky.mahalanobis(dev);
+    }
+
+    @Override
+    public double logPdf(double[] x) {
+        double logPdf = logNormalizer - 0.5 * mahalanobis(x);
+
+        return logPdf == Double.NEGATIVE_INFINITY ? -Double.MAX_VALUE : logPdf;
+    }
+
+    /**
+     * @param x a row or column vector of d elements
+     */
+    @Override
+    public double logPdf(Matrix x) {
+        return logPdf(x.toArray());
+    }
+
+    /**
+     * Computes the log of the probability density function for every row of a
+     * data matrix, as {@link #logPdf(double[])} does for a single vector.
+     * <p/>
+     * Rows are taken in blocks: the deviations of a block from the mean are
+     * solved against the Cholesky factor at once, {@code Z = (X - mu) L^-T},
+     * and the log densities follow from the squared row norms of {@code Z}.
+     * Blocks are scored in parallel.
+     *
+     * @param dataSet an n x d matrix, one data point per row
+     * @return the n log probabilities.
+     * @throws ArithmeticException if the rows are not the correct length, or the
+     *                             distribution has not yet been set
+     */
+    public double[] logPdfs(Matrix dataSet) {
+        checkPoint(dataSet.getColumnsNum());
+
+        final int n = dataSet.getRowsNum(), d = dimension;
+        final double[] x = MatrixFactory.array(dataSet);
+        final double[] res = new double[n];
+
+        int blocks = (n + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        int tasks = (int) Math.max(1, Math.min(Parallel.numCores(), (long) n * d * d / MIN_TASK_WORK));
+        Parallel.blockingRanges(Parallel.split(0, blocks, Math.min(blocks, tasks)), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                double[] z = new double[BLOCK_ROWS * d];
+
+                for (int b = from; b < to; b++) {
+                    int r0 = b * BLOCK_ROWS, rows = Math.min(BLOCK_ROWS, n - r0);
+
+                    for (int j = 0; j < d; j++) {
+                        double m = mu[j];
+                        for (int r = 0, src = r0 + j * n, dst = j * rows; r < rows; r++)
+                            z[dst + r] = x[src + r] - m;
+                    }
+
+                    cholesky.solveRows(z, rows);
+
+                    for (int r = 0; r < rows; r++)
+                        res[r0 + r] = 0.0;
+                    for (int j = 0; j < d; j++)
+                        for (int r = 0, off = j * rows; r < rows; r++)
+                            res[r0 + r] += z[off + r] * z[off + r];
+
+                    for (int r = 0; r < rows; r++) {
+                        double logPdf = logNormalizer - 0.5 * res[r0 + r];
+                        res[r0 + r] = logPdf == Double.NEGATIVE_INFINITY ? -Double.MAX_VALUE : logPdf;
+                    }
+                }
+            }
+        });
+
+        return res;
+    }
+
+    @Override
+    public double pdf(double[] x) {
+        return Math.exp(logPdf(x));
+    }
+
+    /**
+     * @param x a row or column vector of d elements
+     */
+    @Override
+    public double pdf(Matrix x) {
+        return pdf(x.toArray());
+    }
+
+    /**
+     * Fits the mean and the (maximum likelihood) covariance matrix.
+     *
+     * @param dataSet an n x d matrix, one data point per row
+     */
+    @Override
+    public boolean setUsingData(Matrix dataSet) {
+        int n = dataSet.getRowsNum(), d = dataSet.getColumnsNum();
+        if (n == 0)
+            return false;
+
+        // column-major, so that each feature is contiguous
+        double[] x = MatrixFactory.array(dataSet);
+
+        double[] mean = new double[d];
+        for (int j = 0; j < d; j++) {
+            double sum = 0.0;
+            for (int i = j * n, end = i + n; i < end; i++)
+                sum += x[i];
+            mean[j] = sum / n;
+        }
+
+        double[] cov = new double[d * d];
+        for (int j = 0; j < d; j++) {
+            for (int k = 0; k <= j; k++) {
+                double sum = 0.0;
+                for (int i = 0, pj = j * n, pk = k * n; i < n; i++)
+                    sum += (x[pj + i] - mean[j]) * (x[pk + i] - mean[k]);
+                cov[j + k * d] = cov[k + j * d] = sum / n;
+            }
+        }
+
+        return setParameters(mean, MatrixFactory.wrap(d, d, cov));
+    }
+
+    private void checkPoint(int length) {
+        if (cholesky == null)
+            throw new ArithmeticException("the distribution has not been set.");
+        if (length != dimension)
+            throw new ArithmeticException("the point should have " + dimension + " elements.");
+    }
+}
@@ -0,0 +1,45 @@
+package com.numb3r3.common.opt;
+
+/**
+ * AdaGrad (Duchi et al., 2011): each coordinate has its own learning rate, which shrinks with the sum {@code G} of
+ * its squared gradients:
+ *
+ * <pre>
+ *     G += g^2
+ *     x -= eta * g / (sqrt(G) + epsilon)
+ * </pre>
+ */
+public class AdaGradMinimizer extends StochasticMinimizer {
+
+    private double epsilon = 1e-8;
+    private double[] sumSquares;
+
+    /**
+     * A minimizer with a learning rate of 0.1
+     */
+    public AdaGradMinimizer() {
+        super(0.1);
+    }
+
+    /**
+     * @param epsilon smoothing term of the denominator, 1e-8 by default
+     */
+    public AdaGradMinimizer setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+        return this;
+    }
+
+    @Override
+    protected void reset(int dimension) {
+        sumSquares = new double[dimension];
+    }
+
+    @Override
+    protected void update(double[] x, double[] gradient, double rate, long step) {
+        for (int i = 0; i < x.length; i++) {
+            double g = gradient[i];
+            sumSquares[i] += g * g;
+            x[i] -= rate * g / (Math.sqrt(sumSquares[i]) + epsilon);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.numb3r3.common.opt;
+
+/**
+ * Adam (Kingma and Ba, 2015): steps along running means of the gradients {@code m} and of their squares {@code v},
+ * corrected for their initialization at zero:
+ *
+ * <pre>
+ *     m = beta1 * m + (1 - beta1) * g
+ *     v = beta2 * v + (1 - beta2) * g^2
+ *     x -= eta * (m / (1 - beta1^t)) / (sqrt(v / (1 - beta2^t)) + epsilon)
+ * </pre>
+ */
+public class AdamMinimizer extends StochasticMinimizer {
+
+    private double beta1 = 0.9;
+    private double beta2 = 0.999;
+    private double epsilon = 1e-8;
+    private double[] m, v;
+
+    /**
+     * A minimizer with a learning rate of 0.001
+     */
+    public AdamMinimizer() {
+        super(0.001);
+    }
+
+    /**
+     * @param beta1 decay of the mean of the gradients, 0.9 by default
+     * @param beta2 decay of the mean of the squared gradients, 0.999 by default
+     */
+    public AdamMinimizer setDecayRates(double beta1, double beta2) {
+        if (beta1 < 0.0 || beta1 >= 1.0 || beta2 < 0.0 || beta2 >= 1.0)
+            throw new IllegalArgumentException("beta1=" + beta1 + ", beta2=" + beta2 + ", which should be in [0, 1)");
+
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        return this;
+    }
+
+    /**
+     * @param epsilon smoothing term of the denominator, 1e-8 by default
+     */
+    public AdamMinimizer setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+        return this;
+    }
+
+    @Override
+    protected void reset(int dimension) {
+        m = new double[dimension];
+        v = new double[dimension];
+    }
+
+    @Override
+    protected void update(double[] x, double[] gradient, double rate, long step) {
+        double c1 = 1.0 - Math.pow(beta1, step), c2 = 1.0 - Math.pow(beta2, step);
+        double stepSize = rate * Math.sqrt(c2) / c1;
+        double eps = epsilon * Math.sqrt(c2);
+
+        for (int i = 0; i < x.length; i++) {
+            double g = gradient[i];
+            m[i] = beta1 * m[i] + (1.0 - beta1) * g;
+            v[i] = beta2 * v[i] + (1.0 - beta2) * g * g;
+            x[i] -= stepSize * m[i] / (Math.sqrt(v[i]) + eps);
+        }
+    }
+}
@@ -9,10 +9,31 @@ public class BacktrackingLineSearcher implements GradientLineSearcher {
     private double sufficientDecreaseConstant = 1e-4;//0.9;
 
     public double[] minimize(DifferentiableFunction function, double[] initial, double[] direction) {
+        double[] initialGradient = new double[initial.length];
+        double initialValue = DifferentiableFunctions.calculate(function, initial, initialGradient);
+        double[] point = new double[initial.length];
+        minimize(function, initial, initialValue, initialGradient, direction, point, new double[initial.length]);
+        return point;
+    }
+
+    /**
+     * Search along a direction from a point whose value and gradient are already known. The gradient at the returned
+     * point is left to the caller: a fused function computes it together with the value of each step tried, any other
+     * function once, at the step accepted.
+     *
+     * @param initialValue    the value at {@code initial}
+     * @param initialGradient the gradient at {@code initial}
+     * @param point           buffer overwritten with the point accepted, or with {@code initial} if the step size
+     *                        underflows; it must not be {@code initial}
+     * @param gradient        buffer overwritten with the gradient at {@code point}
+     * @return the value at {@code point}
+     */
+    public double minimize(DifferentiableFunction function, double[] initial, double initialValue,
+                           double[] initialGradient, double[] direction, double[] point, double[] gradient) {
         double stepSize = 1.0;
-        double initialFunctionValue = function.valueAt(initial);
-        double initialDirectionalDerivative = DoubleArrays.innerProduct(function.derivativeAt(initial), direction);
-        double[] guess = null;
+        double initialFunctionValue = initialValue;
+        double initialDirectionalDerivative = DoubleArrays.innerProduct(initialGradient, direction);
+        double[] guess = point;
         double guessValue = 0.0;
         boolean sufficientDecreaseObtained = false;
 //    if (false) {
@@ -30,8 +51,9 @@ public class BacktrackingLineSearcher implements GradientLineSearcher {
 //      }
 //    }
         while (!sufficientDecreaseObtained) {
-            guess = DoubleArrays.addMultiples(initial, 1.0, direction, stepSize);
-            guessValue = function.valueAt(guess);
+            for (int i = 0; i < guess.length; i++)
+                guess[i] = initial[i] + stepSize * direction[i];
+            guessValue = DifferentiableFunctions.valueAt(function, guess, gradient);
             double sufficientDecreaseValue = initialFunctionValue + sufficientDecreaseConstant * initialDirectionalDerivative * stepSize;
 //      System.out.println("Trying step size:  "+stepSize);
 //      System.out.println("Required value is: "+sufficientDecreaseValue);
@@ -43,7 +65,9 @@ public class BacktrackingLineSearcher implements GradientLineSearcher {
                 if (stepSize < EPS) {
                     //throw new RuntimeException("BacktrackingSearcher.minimize: stepSize underflow.");
                     System.err.println("BacktrackingSearcher.minimize: stepSize underflow.");
-                    return initial;
+                    System.arraycopy(initial, 0, point, 0, point.length);
+                    System.arraycopy(initialGradient, 0, gradient, 0, gradient.length);
+                    return initialValue;
                 }
             }
         }
@@ -57,6 +81,7 @@ public class BacktrackingLineSearcher implements GradientLineSearcher {
 //      guessValue = function.valueAt(guess);
 //    }
 //    return lastGuess;
-        return guess;
+        DifferentiableFunctions.fillGradient(function, guess, gradient);
+        return guessValue;
     }
 }
\ No newline at end of file
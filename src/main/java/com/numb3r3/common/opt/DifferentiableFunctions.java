@@ -0,0 +1,56 @@
+package com.numb3r3.common.opt;
+
+/**
+ * Evaluation of {@link DifferentiableFunction}s by the minimizers and line searchers, which takes the single pass of a
+ * {@link FusedDifferentiableFunction} when the function offers it.
+ */
+public class DifferentiableFunctions {
+
+    private DifferentiableFunctions() {
+    }
+
+    /**
+     * Evaluate the value and the gradient of a function at a point. A {@link FusedDifferentiableFunction} computes
+     * both in one pass; any other function is asked for {@link DifferentiableFunction#valueAt(double[])} and then
+     * {@link DifferentiableFunction#derivativeAt(double[])}.
+     *
+     * @param function the function
+     * @param x        the point
+     * @param gradient buffer of {@code function.dimension()} entries, overwritten with the gradient at {@code x}
+     * @return the value at {@code x}
+     */
+    public static double calculate(DifferentiableFunction function, double[] x, double[] gradient) {
+        if (function instanceof FusedDifferentiableFunction)
+            return ((FusedDifferentiableFunction) function).calculate(x, gradient);
+
+        double value = function.valueAt(x);
+        System.arraycopy(function.derivativeAt(x), 0, gradient, 0, gradient.length);
+        return value;
+    }
+
+    /**
+     * Evaluate the value of a function at a trial point, e.g., of a line search, whose gradient is needed only if the
+     * point is accepted. A {@link FusedDifferentiableFunction} fills the gradient as well, at no extra pass; any other
+     * function computes the value alone, and {@link #fillGradient(DifferentiableFunction, double[], double[])} must
+     * then be called for the point accepted.
+     *
+     * @param gradient buffer of {@code function.dimension()} entries, overwritten with the gradient at {@code x} by a
+     *                 fused function only
+     * @return the value at {@code x}
+     */
+    public static double valueAt(DifferentiableFunction function, double[] x, double[] gradient) {
+        if (function instanceof FusedDifferentiableFunction)
+            return ((FusedDifferentiableFunction) function).calculate(x, gradient);
+
+        return function.valueAt(x);
+    }
+
+    /**
+     * Complete {@link #valueAt(DifferentiableFunction, double[], double[])} at the point accepted: fill the gradient
+     * unless the function already did.
+     */
+    public static void fillGradient(DifferentiableFunction function, double[] x, double[] gradient) {
+        if (!(function instanceof FusedDifferentiableFunction))
+            System.arraycopy(function.derivativeAt(x), 0, gradient, 0, gradient.length);
+    }
+}
@@ -0,0 +1,18 @@
+package com.numb3r3.common.opt;
+
+/**
+ * A differentiable function whose value and gradient are computed together, in a single pass over its data.
+ * <p/>
+ * The minimizers and line searchers of this package evaluate functions through
+ * {@link DifferentiableFunctions#calculate(DifferentiableFunction, double[], double[])}, which calls
+ * {@link #calculate(double[], double[])} when the function implements it.
+ */
+public interface FusedDifferentiableFunction extends DifferentiableFunction {
+    /**
+     * @param x        the point, which must not be modified
+     * @param gradient buffer of {@link #dimension()} entries, owned by the caller, overwritten with the gradient at
+     *                 {@code x}
+     * @return the value at {@code x}
+     */
+    double calculate(double[] x, double[] gradient);
+}
@@ -13,8 +13,8 @@ public class GradientChecker {
             DoubleMatrix xMat = DoubleMatrix.rand(size);
 //			DoubleMatrix xMat = attempts != 10 ? DoubleMatrix.rand(size) : DoubleMatrix.ones(size).mul(0.1);
             double[] x = xMat.data;
-            double ReturnedCost = Func.valueAt(x);
-            double[] ReturnedGradient = Func.derivativeAt(x);
+            double[] ReturnedGradient = new double[size];
+            double ReturnedCost = DifferentiableFunctions.calculate(Func, x, ReturnedGradient);
             double[] NumericalGradient = new double[size];
             double PartCosts;
 
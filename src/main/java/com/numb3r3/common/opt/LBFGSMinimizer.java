@@ -19,9 +19,11 @@ public class LBFGSMinimizer implements GradientMinimizer {
 
         BacktrackingLineSearcher lineSearcher = new BacktrackingLineSearcher();
         double[] guess = DoubleArrays.clone(initial);
+        double[] nextGuess = new double[guess.length];
+        double[] derivative = new double[guess.length];
+        double[] nextDerivative = new double[guess.length];
+        double value = DifferentiableFunctions.calculate(function, guess, derivative);
         for (int iteration = 0; iteration < maxIterations; iteration++) {
-            double value = function.valueAt(guess);
-            double[] derivative = function.derivativeAt(guess);
             double[] initialInverseHessianDiagonal = getInitialInverseHessianDiagonal(function);
             double[] direction = implicitMultiply(
                     initialInverseHessianDiagonal, derivative);
@@ -35,18 +37,21 @@ public class LBFGSMinimizer implements GradientMinimizer {
                 lineSearcher.stepSizeMultiplier = 0.01;
             else
                 lineSearcher.stepSizeMultiplier = 0.5;
-            double[] nextGuess = lineSearcher.minimize(function, guess,
-                    direction);
-            double nextValue = function.valueAt(nextGuess);
-            double[] nextDerivative = function.derivativeAt(nextGuess);
+            // the line search leaves the point and its gradient in the buffers
+            double nextValue = lineSearcher.minimize(function, guess, value,
+                    derivative, direction, nextGuess, nextDerivative);
             System.err.println("Iteration " + iteration + " ended with value "
                     + nextValue);
             if (converged(value, nextValue, tolerance))
                 return nextGuess;
             updateHistories(guess, nextGuess, derivative, nextDerivative);
+            double[] temp = guess;
             guess = nextGuess;
+            nextGuess = temp;
             value = nextValue;
+            temp = derivative;
             derivative = nextDerivative;
+            nextDerivative = temp;
         }
         // System.err.println("LBFGSMinimizer.minimize: Exceeded maxIterations without converging.");
         return guess;
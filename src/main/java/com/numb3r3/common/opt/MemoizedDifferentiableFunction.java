@@ -1,6 +1,6 @@
 package com.numb3r3.common.opt;
 
-public abstract class MemoizedDifferentiableFunction implements DifferentiableFunction {
+public abstract class MemoizedDifferentiableFunction implements FusedDifferentiableFunction {
     protected double[] prevQuery, gradient;
     protected double value;
     protected int evalCount;
@@ -25,4 +25,11 @@ public abstract class MemoizedDifferentiableFunction implements DifferentiableFu
         valueAt(x);
         return gradient;
     }
+
+    @Override
+    public double calculate(double[] x, double[] gradient) {
+        double value = valueAt(x);
+        System.arraycopy(this.gradient, 0, gradient, 0, gradient.length);
+        return value;
+    }
 }
\ No newline at end of file
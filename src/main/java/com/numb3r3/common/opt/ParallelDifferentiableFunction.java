@@ -0,0 +1,168 @@
+package com.numb3r3.common.opt;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+import java.util.Arrays;
+
+/**
+ * Base class of objectives that are a sum over examples, such as the log-likelihood of a logistic regression or a
+ * CRF, evaluated in parallel.
+ * <p/>
+ * The examples are split into one shard per core, and the shards run in the fork-join pool of {@link Parallel}. Each
+ * shard accumulates its value and gradient into a buffer of its own, so that workers never share memory, and the
+ * buffers are then summed pairwise in a tree whose levels are parallel over coordinates as well. The buffers are
+ * allocated once and reused by every evaluation.
+ * <p/>
+ * The value and the gradient are computed together by {@link #calculate(double[], double[])}, which copies the
+ * gradient into a buffer of the caller. They are also memoized for the last point, so that callers of
+ * {@link #valueAt(double[])} and {@link #derivativeAt(double[])} at the same point pay for a single pass over the
+ * examples; the array returned by {@link #derivativeAt(double[])} is a fresh one per evaluation. An instance must not
+ * be evaluated by several threads at once.
+ */
+public abstract class ParallelDifferentiableFunction implements FusedDifferentiableFunction {
+
+    // minimum number of coordinates summed per task of a reduction level
+    private static final int MIN_REDUCE_SLICE = 1 << 14;
+
+    private final int numShards;
+    private double[][] buffers;
+    private final double[] values;
+
+    private double[] lastX, gradient;
+    private double value;
+    // whether value and buffers[0] hold the evaluation at lastX
+    private boolean evaluated;
+
+    protected ParallelDifferentiableFunction() {
+        this(Parallel.numCores());
+    }
+
+    /**
+     * @param numShards maximum number of shards the examples are split into
+     */
+    protected ParallelDifferentiableFunction(int numShards) {
+        if (numShards <= 0)
+            throw new IllegalArgumentException("numShards=" + numShards + ", which should be positive");
+
+        this.numShards = numShards;
+        this.values = new double[numShards];
+    }
+
+    /**
+     * @return the number of examples the objective sums over
+     */
+    public abstract int numExamples();
+
+    /**
+     * Accumulate the terms of the examples {@code [from, to)} at a point. This is called concurrently for disjoint
+     * ranges, each with its own gradient buffer.
+     *
+     * @param x        the point, which must not be modified
+     * @param from     first example
+     * @param to       end of the examples, exclusive
+     * @param gradient buffer of {@link #dimension()} entries to add the gradient of the examples to
+     * @return the sum of the values of the examples
+     */
+    protected abstract double calculate(double[] x, int from, int to, double[] gradient);
+
+    /**
+     * Add the terms that do not depend on the examples, such as a regularizer, once per evaluation. Nothing by
+     * default.
+     *
+     * @param x        the point
+     * @param gradient the summed gradient of the examples, to add the gradient of the terms to
+     * @return the value of the terms
+     */
+    protected double regularize(double[] x, double[] gradient) {
+        return 0.0;
+    }
+
+    @Override
+    public double valueAt(double[] x) {
+        ensureEvaluated(x);
+        return value;
+    }
+
+    @Override
+    public double[] derivativeAt(double[] x) {
+        ensureEvaluated(x);
+        if (gradient == null)
+            gradient = buffers[0].clone();
+        return gradient;
+    }
+
+    @Override
+    public double calculate(double[] x, double[] gradient) {
+        ensureEvaluated(x);
+        System.arraycopy(buffers[0], 0, gradient, 0, gradient.length);
+        return value;
+    }
+
+    private void ensureEvaluated(double[] x) {
+        if (evaluated && Arrays.equals(x, lastX))
+            return;
+
+        evaluated = false;
+        evaluate(x);
+
+        if (lastX == null || lastX.length != x.length)
+            lastX = new double[x.length];
+        System.arraycopy(x, 0, lastX, 0, x.length);
+        evaluated = true;
+    }
+
+    private void evaluate(final double[] x) {
+        final int dim = dimension();
+        final int[] bounds = Parallel.split(0, numExamples(), numShards);
+        final int shards = bounds.length - 1;
+
+        if (buffers == null || buffers[0].length != dim) {
+            buffers = new double[numShards][];
+            for (int s = 0; s < numShards; s++)
+                buffers[s] = new double[dim];
+        }
+
+        Parallel.blockingRanges(Parallel.split(0, shards, shards), new Parallel.RangeOperation() {
+
+            @Override
+            public void perform(int from, int to) {
+                for (int s = from; s < to; s++) {
+                    double[] buffer = buffers[s];
+                    Arrays.fill(buffer, 0.0);
+                    values[s] = calculate(x, bounds[s], bounds[s + 1], buffer);
+                }
+            }
+        });
+
+        // tree reduction: at each level, buffer s accumulates buffer s + stride for s a multiple of 2 * stride
+        final int slices = Math.max(1, Math.min(Parallel.numCores(), dim / MIN_REDUCE_SLICE));
+        final int[] sliceBounds = Parallel.split(0, dim, slices);
+        final int numSlices = sliceBounds.length - 1;
+
+        for (int stride = 1; stride < shards; stride *= 2) {
+            final int step = stride;
+            final int pairs = (shards - stride + 2 * stride - 1) / (2 * stride);
+
+            Parallel.blockingRanges(Parallel.split(0, pairs * numSlices, pairs * numSlices),
+                    new Parallel.RangeOperation() {
+
+                        @Override
+                        public void perform(int from, int to) {
+                            for (int t = from; t < to; t++) {
+                                int s = t / numSlices * 2 * step, slice = t % numSlices;
+                                double[] dst = buffers[s], src = buffers[s + step];
+                                for (int i = sliceBounds[slice]; i < sliceBounds[slice + 1]; i++)
+                                    dst[i] += src[i];
+                            }
+                        }
+                    });
+
+            for (int s = 0; s + stride < shards; s += 2 * stride)
+                values[s] += values[s + stride];
+        }
+
+        // buffers[0] holds the gradient until the next evaluation
+        value = values[0] + regularize(x, buffers[0]);
+        gradient = null;
+    }
+}
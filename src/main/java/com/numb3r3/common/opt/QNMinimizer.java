@@ -52,6 +52,19 @@ import java.util.List;
  * if |g| &lt; eps*max( 1 , |x| ) which is essentially checking to see if the
  * gradient is numerically zero.
  * <p/>
+ * <p/>
+ * OWL-QN: {@link #useOWLQN(boolean, double)} minimizes f(x) + lambda*|x|_1
+ * with the Orthant-Wise Limited-memory Quasi-Newton method (Andrew and Gao,
+ * 2007). The function only supplies the smooth part f. The search direction is
+ * computed from the pseudo-gradient of the objective and kept in the orthant
+ * of the current point, and each point tried by the linesearch is projected
+ * onto that orthant, so coordinates that cross zero are set to exactly zero and
+ * the solution is sparse. The s,y pairs of QNInfo are built from the gradients
+ * of f, as usual. The projected points are searched by backtracking, whichever
+ * linesearch is selected, since the MINPACK interpolation assumes a smooth
+ * objective along the search direction. Convergence is measured on the
+ * pseudo-gradient.
+ * <p/>
  * Each of these convergence criteria can be turned on or off by setting the
  * flags: <blockquote><code>
  * private boolean useAveImprovement = true;
@@ -105,6 +118,9 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
     private boolean useRelativeNorm = true;
     private boolean useNumericalZero = true;
 
+    private boolean useOWLQN = false;
+    private double lambdaOWL = 0.0; // weight of the L1 term for OWL-QN
+
     public enum eState {
         TERMINATE_MAXEVALS, TERMINATE_RELATIVENORM, TERMINATE_GRADNORM, TERMINATE_AVERAGEIMPROVE, CONTINUE
     }
@@ -201,6 +217,21 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
         scaleOpt = eScaling.SCALAR;
     }
 
+    /**
+     * Minimize f(x) + lambda*|x|_1 with OWL-QN, where f is the function passed
+     * to minimize().
+     *
+     * @param use    whether to add the L1 term
+     * @param lambda the weight of the L1 term, which should be positive
+     */
+    public void useOWLQN(boolean use, double lambda) {
+        if (use && lambda <= 0)
+            throw new IllegalArgumentException("lambda=" + lambda + ", which should be positive");
+
+        this.useOWLQN = use;
+        this.lambdaOWL = lambda;
+    }
+
     public boolean wasSuccessful() {
         return success;
     }
@@ -827,7 +858,7 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
             noHistory = false;
         }
 
-        double[] x, newX, grad, newGrad, dir;
+        double[] x, newX, grad, newGrad, dir, pgrad;
         double value;
         its = 0;
         fevals = 0;
@@ -843,11 +874,18 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
         newGrad = new double[x.length];
         newX = new double[x.length];
         dir = new double[x.length];
+        // the direction of steepest descent of the objective, -pgrad, is
+        // -grad unless the L1 term of OWL-QN is added
+        pgrad = useOWLQN ? new double[x.length] : grad;
 
         // initialize function value and gradient (gradient is stored in grad
         // inside
         // evaluateFunction)
         value = evaluateFunction(dfunction, x, grad);
+        if (useOWLQN) {
+            value += lambdaOWL * ArrayMath.norm_1(x);
+            pseudoGradient(x, grad, pgrad);
+        }
 
         PrintWriter outFile = null;
         PrintWriter infoFile = null;
@@ -872,7 +910,7 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
 
         Record rec = new Record(monitor, functionTolerance, outFile);
         // sets the original gradient and x. Also stores the monitor.
-        rec.start(value, grad, x);
+        rec.start(value, pgrad, x);
 
         // Check if max Evaluations and Iterations have been provided.
         maxFevals = (maxFunctionEvaluations > 0) ? maxFunctionEvaluations
@@ -916,7 +954,10 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
 
                 // Compute the search direction
                 say("<");
-                computeDir(dir, grad, qn);
+                computeDir(dir, pgrad, qn);
+                if (useOWLQN) {
+                    constrainSearchDir(dir, pgrad);
+                }
                 say("> ");
 
                 // sanity check dir
@@ -925,7 +966,7 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
                 for (int i = 0; i < dir.length; i++) {
                     if (dir[i] != dir[i])
                         hasNaNDir = true;
-                    if (grad[i] != grad[i])
+                    if (pgrad[i] != pgrad[i])
                         hasNaNGrad = true;
                 }
                 if (hasNaNDir && !hasNaNGrad) {
@@ -933,7 +974,10 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
                     qn.clear();
                     // re-compute the search direction
                     say("<");
-                    computeDir(dir, grad, qn);
+                    computeDir(dir, pgrad, qn);
+                    if (useOWLQN) {
+                        constrainSearchDir(dir, pgrad);
+                    }
                     say("> ");
                 }
 
@@ -941,13 +985,17 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
                 say("[");
 
                 // switch between line search options.
-                switch (lsOpt) {
+                switch (useOWLQN ? eLineSearch.BACKTRACK : lsOpt) {
                     case BACKTRACK:
-                        newPoint = lineSearchBacktrack(dfunction, dir, x, newX, grad, value);
+                        if (useOWLQN) {
+                            newPoint = lineSearchBacktrackOWL(dfunction, dir, x, newX, newGrad, pgrad, value);
+                        } else {
+                            newPoint = lineSearchBacktrack(dfunction, dir, x, newX, grad, newGrad, value);
+                        }
                         say("B");
                         break;
                     case MINPACK:
-                        newPoint = lineSearchMinPack(dfunction, dir, x, newX, grad, value, functionTolerance);
+                        newPoint = lineSearchMinPack(dfunction, dir, x, newX, grad, newGrad, value, functionTolerance);
                         say("M");
                         break;
                     default:
@@ -961,18 +1009,11 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
                 System.err.print(" " + nf.format(newPoint[a]));
                 say("] ");
 
-                // This shouldn't actually evaluate anything since that should
-                // have been done in the lineSearch.
-                System.arraycopy(dfunction.derivativeAt(newX), 0, newGrad, 0, newGrad.length);
+                // The line searches leave the gradient at newX in newGrad.
 
                 // This is where all the s, y updates are applied.
                 qn.update(newX, x, newGrad, grad, newPoint[a]);
 
-                // Add the current value and gradient to the records, this also
-                // monitors
-                // X and writes to output
-                rec.add(newValue, newGrad, newX, fevals);
-
                 // shift
                 value = newValue;
                 // double[] temp = x;
@@ -980,6 +1021,14 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
                 // newX = temp;
                 System.arraycopy(newX, 0, x, 0, x.length);
                 System.arraycopy(newGrad, 0, grad, 0, newGrad.length);
+                if (useOWLQN) {
+                    pseudoGradient(x, grad, pgrad);
+                }
+
+                // Add the current value and gradient to the records, this also
+                // monitors
+                // X and writes to output
+                rec.add(value, pgrad, x, fevals);
 
                 if (quiet) {
                     System.err.print(".");
@@ -1079,8 +1128,7 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
 
     private double evaluateFunction(DifferentiableFunction dfunc, double[] x,
                                     double[] grad) {
-        double cost = dfunc.valueAt(x);
-        System.arraycopy(dfunc.derivativeAt(x), 0, grad, 0, grad.length);
+        double cost = DifferentiableFunctions.calculate(dfunc, x, grad);
         fevals += 1;
         return cost;
     }
@@ -1090,8 +1138,8 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
      * of QNMinimizer. it only satisfies sufficient descent not the Wolfe
      * conditions.
      */
-    private double[] lineSearchBacktrack(Function func, double[] dir,
-                                         double[] x, double[] newX, double[] grad, double lastValue)
+    private double[] lineSearchBacktrack(DifferentiableFunction dfunc, double[] dir,
+                                         double[] x, double[] newX, double[] grad, double[] newGrad, double lastValue)
             throws MaxEvaluationsExceeded {
 
         double normGradInDir = ArrayMath.innerProduct(dir, grad);
@@ -1123,7 +1171,7 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
 
         double[] newPoint = new double[3];
 
-        while ((newPoint[f] = func.valueAt((plusAndConstMult(x, dir, step, newX))))
+        while ((newPoint[f] = DifferentiableFunctions.valueAt(dfunc, plusAndConstMult(x, dir, step, newX), newGrad))
                 > lastValue + c * step) {
             fevals += 1;
             if (newPoint[f] < lastValue) {
@@ -1135,6 +1183,7 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
             step = c1 * step;
         }
 
+        DifferentiableFunctions.fillGradient(dfunc, newX, newGrad);
         newPoint[a] = step;
         fevals += 1;
         if (fevals > maxFevals) {
@@ -1145,9 +1194,115 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
         return newPoint;
     }
 
+    /*
+     * pseudoGradient computes the pseudo-gradient of f(x) + lambda*|x|_1 for
+     * OWL-QN: where x is zero, the L1 term is not differentiable, and the
+     * pseudo-gradient is the one-sided derivative of steepest descent, or zero
+     * if neither side descends.
+     */
+    private void pseudoGradient(double[] x, double[] grad, double[] pgrad) {
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] > 0) {
+                pgrad[i] = grad[i] + lambdaOWL;
+            } else if (x[i] < 0) {
+                pgrad[i] = grad[i] - lambdaOWL;
+            } else if (grad[i] < -lambdaOWL) {
+                pgrad[i] = grad[i] + lambdaOWL;
+            } else if (grad[i] > lambdaOWL) {
+                pgrad[i] = grad[i] - lambdaOWL;
+            } else {
+                pgrad[i] = 0;
+            }
+        }
+    }
+
+    /*
+     * constrainSearchDir zeroes the coordinates of the direction that do not
+     * descend along the pseudo-gradient, which keeps the quasi Newton direction
+     * in the orthant of steepest descent.
+     */
+    private static void constrainSearchDir(double[] dir, double[] pgrad) {
+        for (int i = 0; i < dir.length; i++) {
+            if (dir[i] * pgrad[i] >= 0) {
+                dir[i] = 0;
+            }
+        }
+    }
+
+    /*
+     * lineSearchBacktrackOWL is lineSearchBacktrack for OWL-QN: each point
+     * tried is projected onto the orthant of x (or, where x is zero, of
+     * -pgrad), and the sufficient decrease is measured along the projected
+     * step.
+     */
+    private double[] lineSearchBacktrackOWL(DifferentiableFunction dfunc, double[] dir,
+                                            double[] x, double[] newX, double[] newGrad, double[] pgrad,
+                                            double lastValue) throws MaxEvaluationsExceeded {
+
+        double normGradInDir = ArrayMath.innerProduct(dir, pgrad);
+        say("(" + nf.format(normGradInDir) + ")");
+        if (normGradInDir > 0) {
+            say("{WARNING--- direction of positive gradient chosen!}");
+        }
+
+        // same schedule of steps as lineSearchBacktrack
+        double step, c1;
+        if (its <= 2) {
+            step = 0.1;
+            c1 = 0.1;
+        } else {
+            step = 1.0;
+            c1 = 0.1;
+        }
+        double c = 0.01;
+
+        double[] newPoint = new double[3];
+
+        while (true) {
+            plusAndConstMult(x, dir, step, newX);
+            double decrease = 0;
+            for (int i = 0; i < x.length; i++) {
+                double orthant = x[i] != 0 ? x[i] : -pgrad[i];
+                if (newX[i] * orthant <= 0) {
+                    newX[i] = 0;
+                }
+                decrease += pgrad[i] * (newX[i] - x[i]);
+            }
+
+            newPoint[f] = DifferentiableFunctions.valueAt(dfunc, newX, newGrad)
+                    + lambdaOWL * ArrayMath.norm_1(newX);
+            fevals += 1;
+            if (newPoint[f] <= lastValue + c * decrease) {
+                break;
+            }
+
+            if (newPoint[f] < lastValue) {
+                // an improvement, but not good enough... suspicious!
+                say("!");
+            } else {
+                say(".");
+            }
+            step = c1 * step;
+
+            if (fevals > maxFevals) {
+                throw new MaxEvaluationsExceeded(
+                        " Exceeded during linesearchBacktrackOWL() Function ");
+            }
+        }
+
+        DifferentiableFunctions.fillGradient(dfunc, newX, newGrad);
+        newPoint[a] = step;
+        if (fevals > maxFevals) {
+            throw new MaxEvaluationsExceeded(
+                    " Exceeded during linesearchBacktrackOWL() Function ");
+        }
+
+        return newPoint;
+    }
+
     private double[] lineSearchMinPack(DifferentiableFunction dfunc,
-                                       double[] dir, double[] x, double[] newX, double[] grad, double f0,
-                                       double tol) throws MaxEvaluationsExceeded {
+                                       double[] dir, double[] x, double[] newX, double[] grad, double[] newGrad,
+                                       double f0, double tol) throws MaxEvaluationsExceeded {
         double xtrapf = 4.0;
         int info = 0;
         int infoc = 1;
@@ -1219,8 +1374,8 @@ public class QNMinimizer implements Minimizer<DifferentiableFunction> {
                 newPt[a] = bestPt[a];
             }
 
-            newPt[f] = dfunc.valueAt((plusAndConstMult(x, dir, newPt[a], newX)));
-            newPt[g] = ArrayMath.innerProduct(dfunc.derivativeAt(newX), dir);
+            newPt[f] = DifferentiableFunctions.calculate(dfunc, plusAndConstMult(x, dir, newPt[a], newX), newGrad);
+            newPt[g] = ArrayMath.innerProduct(newGrad, dir);
             double fTest = f0 + newPt[a] * gTest;
             fevals += 1;
 
@@ -0,0 +1,52 @@
+package com.numb3r3.common.opt;
+
+/**
+ * Mini-batch stochastic gradient descent, with optional (heavy-ball) momentum {@code mu}:
+ *
+ * <pre>
+ *     v = mu * v - eta * g
+ *     x += v
+ * </pre>
+ */
+public class SGDMinimizer extends StochasticMinimizer {
+
+    private double momentum = 0.0;
+    private double[] velocity;
+
+    /**
+     * A minimizer with a learning rate of 0.01 and no momentum
+     */
+    public SGDMinimizer() {
+        super(0.01);
+    }
+
+    /**
+     * @param momentum momentum {@code mu}, in {@code [0, 1)}, 0 by default
+     */
+    public SGDMinimizer setMomentum(double momentum) {
+        if (momentum < 0.0 || momentum >= 1.0)
+            throw new IllegalArgumentException("momentum=" + momentum + ", which should be in [0, 1)");
+
+        this.momentum = momentum;
+        return this;
+    }
+
+    @Override
+    protected void reset(int dimension) {
+        velocity = momentum > 0.0 ? new double[dimension] : null;
+    }
+
+    @Override
+    protected void update(double[] x, double[] gradient, double rate, long step) {
+        if (velocity == null) {
+            for (int i = 0; i < x.length; i++)
+                x[i] -= rate * gradient[i];
+            return;
+        }
+
+        for (int i = 0; i < x.length; i++) {
+            velocity[i] = momentum * velocity[i] - rate * gradient[i];
+            x[i] += velocity[i];
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.numb3r3.common.opt;
+
+/**
+ * A differentiable function that is a sum of terms, one per example, such as the negative log-likelihood of a
+ * training set, so that it can be minimized by a {@link StochasticMinimizer} from the gradients of small batches of
+ * examples. Terms that do not depend on the examples, such as a regularizer, should be spread over the examples.
+ */
+public interface StochasticDifferentiableFunction extends DifferentiableFunction {
+    /**
+     * @return the number of examples the function sums over
+     */
+    int numExamples();
+
+    /**
+     * Accumulate the terms of a batch of examples at a point. This may be called concurrently, for different batches
+     * and gradient buffers.
+     *
+     * @param x        the point, which must not be modified
+     * @param examples indices of examples, in {@code [0, numExamples())}
+     * @param from     first entry of {@code examples} in the batch
+     * @param to       end of the entries of {@code examples} in the batch, exclusive
+     * @param gradient buffer of {@link #dimension()} entries to add the gradient of the batch to
+     * @return the sum of the values of the examples of the batch
+     */
+    double calculate(double[] x, int[] examples, int from, int to, double[] gradient);
+}
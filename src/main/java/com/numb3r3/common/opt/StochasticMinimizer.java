@@ -0,0 +1,441 @@
+package com.numb3r3.common.opt;
+
+import com.numb3r3.common.concurrent.Parallel;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class of the stochastic gradient minimizers, which follow the gradients of mini-batches of examples instead of
+ * the full gradient, and so make progress long before a single pass over a large training set is over.
+ * <p/>
+ * Each epoch visits the examples in a random order, in batches of {@link #setBatchSize(int)} examples. The step
+ * follows the mean gradient of the examples of the batch, scaled by a learning rate that may decay along a
+ * {@link Schedule}. The rule of the step is that of the subclass: {@link SGDMinimizer}, {@link AdaGradMinimizer} or
+ * {@link AdamMinimizer}.
+ * <p/>
+ * By default, the steps are synchronous: the examples of each batch are split between the parallel workers, each
+ * computes the gradient of its share into a buffer of its own, and the buffers are summed before a single step is
+ * applied. The point is not modified while the gradients are computed, and the minimization is deterministic for a
+ * given seed and number of workers. The number of workers of a step is sized from the work of a batch, so that small
+ * batches of small models run on a single thread.
+ * <p/>
+ * With {@link #setLockFree(boolean)}, the batches of an epoch are instead split into contiguous ranges, one per
+ * worker, and each worker applies the steps of its own batches to the shared point without any synchronization, as
+ * in Hogwild (Niu et al., 2011). This saves the reduction of the buffers, but the point, and the state of the rule,
+ * then change while other workers read them, and concurrent steps on the same coordinates may overwrite each other.
+ * The scheme only pays off when the gradients of the examples are sparse, so that concurrent steps rarely touch the
+ * same coordinates, and when the function tolerates being evaluated at a point that changes under it.
+ * <p/>
+ * In {@link #minimize(StochasticDifferentiableFunction, double, double[], int)}, the iterations are epochs, and the
+ * minimization stops early once the relative change of the mean loss of an epoch, measured on the batches as they
+ * are visited, is below the tolerance.
+ */
+public abstract class StochasticMinimizer implements Minimizer<StochasticDifferentiableFunction> {
+
+    /**
+     * Decay of the learning rate {@code eta}
+     */
+    public enum Schedule {
+        /**
+         * {@code eta}
+         */
+        CONSTANT,
+        /**
+         * {@code eta / (1 + decay * t)}, after {@code t} steps
+         */
+        INVERSE,
+        /**
+         * {@code eta * decay^e}, in epoch {@code e}
+         */
+        EXPONENTIAL
+    }
+
+    // minimum number of operations (examples visited and coordinates updated) per worker and epoch
+    private static final int MIN_TASK_WORK = 1 << 16;
+
+    private static final double EPS = 1e-10;
+
+    protected double learningRate;
+    private Schedule schedule = Schedule.CONSTANT;
+    private double decay = 0.0;
+    private int batchSize = 64;
+    private int numEpochs = 10;
+    private int numThreads = Parallel.numCores();
+    private boolean shuffle = true;
+    private boolean lockFree = false;
+    private long seed = new Random().nextLong();
+    private boolean quiet = false;
+
+    /**
+     * @param learningRate default initial learning rate of the rule
+     */
+    protected StochasticMinimizer(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Set up the state of the rule for a new minimization
+     *
+     * @param dimension number of coordinates
+     */
+    protected abstract void reset(int dimension);
+
+    /**
+     * Apply a step to the point. This is called by one thread at a time, except in lock-free mode, where the workers
+     * call it concurrently without locks, so that the point and the state of the rule may see interleaved updates.
+     *
+     * @param x        the point, updated in place
+     * @param gradient the mean gradient of the batch
+     * @param rate     the learning rate of the step
+     * @param step     one-based index of the step, counted over all the workers
+     */
+    protected abstract void update(double[] x, double[] gradient, double rate, long step);
+
+    /**
+     * @param learningRate initial learning rate {@code eta}
+     */
+    public StochasticMinimizer setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+        return this;
+    }
+
+    /**
+     * @param schedule decay of the learning rate, {@link Schedule#CONSTANT} by default
+     * @param decay    the parameter of the schedule
+     */
+    public StochasticMinimizer setSchedule(Schedule schedule, double decay) {
+        this.schedule = schedule;
+        this.decay = decay;
+        return this;
+    }
+
+    /**
+     * @param batchSize number of examples per step, 64 by default
+     */
+    public StochasticMinimizer setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize=" + batchSize + ", which should be positive");
+
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param numEpochs number of passes over the examples when no maximum number of iterations is given, 10 by default
+     */
+    public StochasticMinimizer setNumEpochs(int numEpochs) {
+        if (numEpochs < 0)
+            throw new IllegalArgumentException("numEpochs=" + numEpochs + ", which should not be negative");
+
+        this.numEpochs = numEpochs;
+        return this;
+    }
+
+    /**
+     * @param numThreads number of parallel workers, the number of cores by default
+     */
+    public StochasticMinimizer setNumThreads(int numThreads) {
+        if (numThreads <= 0)
+            throw new IllegalArgumentException("numThreads=" + numThreads + ", which should be positive");
+
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    /**
+     * @param shuffle whether each epoch visits a random permutation of the examples (by default), or draws its
+     *                examples uniformly with replacement, which saves the permutation array of
+     *                {@code numExamples()} indices
+     */
+    public StochasticMinimizer setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+        return this;
+    }
+
+    /**
+     * @param lockFree whether the workers apply their steps to the shared point concurrently and without locks
+     *                 (Hogwild), instead of splitting each batch between them, false by default. This is only meant
+     *                 for sparse gradients; see the class documentation for the semantics.
+     */
+    public StochasticMinimizer setLockFree(boolean lockFree) {
+        this.lockFree = lockFree;
+        return this;
+    }
+
+    /**
+     * @param seed seed of the random order of the examples
+     */
+    public StochasticMinimizer setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public void shutUp() {
+        this.quiet = true;
+    }
+
+    @Override
+    public double[] minimize(StochasticDifferentiableFunction function, double functionTolerance, double[] initial) {
+        return minimize(function, functionTolerance, initial, numEpochs);
+    }
+
+    @Override
+    public double[] minimize(StochasticDifferentiableFunction function, double functionTolerance,
+                             double[] initial, int maxIterations) {
+        int dim = function.dimension();
+        int n = function.numExamples();
+        double[] x = DoubleArrays.clone(initial);
+
+        if (maxIterations < 0)
+            maxIterations = numEpochs;
+        if (n == 0)
+            return x;
+
+        reset(dim);
+
+        Random random = new Random(seed);
+        int[] examples = null;
+        if (shuffle) {
+            examples = new int[n];
+            for (int i = 0; i < n; i++)
+                examples[i] = i;
+        }
+
+        Epoch pass = lockFree ? new LockFreeEpoch(function, x, examples)
+                : new SynchronousEpoch(function, x, examples, random);
+
+        double lastLoss = Double.NaN;
+        for (int epoch = 0; epoch < maxIterations; epoch++) {
+            if (shuffle) {
+                for (int i = n - 1; i > 0; i--) {
+                    int r = random.nextInt(i + 1);
+                    int tmp = examples[i];
+                    examples[i] = examples[r];
+                    examples[r] = tmp;
+                }
+            }
+
+            double loss = pass.run(epoch) / n;
+            if (!quiet)
+                System.err.println("Epoch " + epoch + " ended with mean loss " + loss);
+
+            if (converged(lastLoss, loss, functionTolerance))
+                break;
+            lastLoss = loss;
+        }
+
+        return x;
+    }
+
+    /**
+     * The steps of one epoch over the batches
+     */
+    private abstract class Epoch {
+        final StochasticDifferentiableFunction function;
+        final double[] x;
+        final int dim, n, numBatches;
+        // the examples in the order of the epoch, or null to draw them with replacement
+        final int[] examples;
+
+        Epoch(StochasticDifferentiableFunction function, double[] x, int[] examples) {
+            this.function = function;
+            this.x = x;
+            this.examples = examples;
+            dim = function.dimension();
+            n = function.numExamples();
+            numBatches = (n + batchSize - 1) / batchSize;
+        }
+
+        /**
+         * @return the sum of the values of the examples visited
+         */
+        abstract double run(int epoch);
+    }
+
+    /**
+     * Splits the examples of each batch between the workers and sums their gradients before the step
+     */
+    private final class SynchronousEpoch extends Epoch {
+        private final Random random;
+        private final int[] sample;
+        private final int workers;
+        private final double[][] buffers;
+        private final double[] losses;
+        private long step;
+
+        SynchronousEpoch(StochasticDifferentiableFunction function, double[] x, int[] examples, Random random) {
+            super(function, x, examples);
+            this.random = random;
+            sample = examples == null ? new int[batchSize] : null;
+
+            // the workers of a step should outweigh the zeroing and the reduction of their buffers
+            int size = Math.min(batchSize, n);
+            workers = (int) Math.max(1, Math.min(Math.min(numThreads, size), (long) size * dim / MIN_TASK_WORK));
+            buffers = new double[workers][dim];
+            losses = new double[workers];
+        }
+
+        @Override
+        double run(int epoch) {
+            double loss = 0.0;
+
+            for (int b = 0; b < numBatches; b++) {
+                int start = b * batchSize, size = Math.min(batchSize, n - start);
+                final int[] batch;
+                int offset;
+                if (examples != null) {
+                    batch = examples;
+                    offset = start;
+                } else {
+                    batch = sample;
+                    offset = 0;
+                    for (int i = 0; i < size; i++)
+                        batch[i] = random.nextInt(n);
+                }
+
+                final int[] bounds = Parallel.split(offset, offset + size, workers);
+                Parallel.blockingRanges(bounds, new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        int w = Arrays.binarySearch(bounds, from);
+                        Arrays.fill(buffers[w], 0.0);
+                        losses[w] = function.calculate(x, batch, from, to, buffers[w]);
+                    }
+                });
+
+                final int parts = bounds.length - 1;
+                final double scale = 1.0 / size;
+                final double[] gradient = buffers[0];
+                for (int w = 0; w < parts; w++)
+                    loss += losses[w];
+
+                Parallel.blockingRanges(Parallel.split(0, dim, parts), new Parallel.RangeOperation() {
+
+                    @Override
+                    public void perform(int from, int to) {
+                        for (int w = 1; w < parts; w++) {
+                            double[] buffer = buffers[w];
+                            for (int i = from; i < to; i++)
+                                gradient[i] += buffer[i];
+                        }
+                        for (int i = from; i < to; i++)
+                            gradient[i] *= scale;
+                    }
+                });
+
+                step++;
+                update(x, gradient, rate(epoch, step - 1), step);
+            }
+
+            return loss;
+        }
+    }
+
+    /**
+     * Gives each worker a contiguous range of the batches, whose steps it applies to the shared point without locks
+     */
+    private final class LockFreeEpoch extends Epoch {
+        private final int[] batchBounds;
+        private final int workers;
+        private final double[][] buffers;
+        private final double[] losses;
+        private final Random[] randoms;
+        private final int[][] samples;
+        private final AtomicLong steps = new AtomicLong();
+
+        LockFreeEpoch(StochasticDifferentiableFunction function, double[] x, int[] examples) {
+            super(function, x, examples);
+
+            long work = (long) numBatches * dim + n;
+            int tasks = (int) Math.max(1, Math.min(Math.min(numThreads, numBatches), work / MIN_TASK_WORK));
+            batchBounds = Parallel.split(0, numBatches, tasks);
+            workers = batchBounds.length - 1;
+
+            buffers = new double[workers][dim];
+            losses = new double[workers];
+            randoms = new Random[workers];
+            for (int w = 0; w < workers; w++)
+                randoms[w] = new Random(seed + w * 0x9E3779B97F4A7C15L);
+            samples = examples == null ? new int[workers][batchSize] : null;
+        }
+
+        @Override
+        double run(final int epoch) {
+            Parallel.blockingRanges(Parallel.split(0, workers, workers), new Parallel.RangeOperation() {
+
+                @Override
+                public void perform(int from, int to) {
+                    for (int w = from; w < to; w++)
+                        losses[w] = run(w, epoch);
+                }
+            });
+
+            double loss = 0.0;
+            for (int w = 0; w < workers; w++)
+                loss += losses[w];
+
+            return loss;
+        }
+
+        /**
+         * Steps of worker {@code w} over its batches
+         *
+         * @return the sum of the values of the examples visited
+         */
+        private double run(int w, int epoch) {
+            double[] gradient = buffers[w];
+            double loss = 0.0;
+
+            for (int b = batchBounds[w]; b < batchBounds[w + 1]; b++) {
+                int start = b * batchSize, size = Math.min(batchSize, n - start);
+                int[] batch;
+                int offset;
+                if (examples != null) {
+                    batch = examples;
+                    offset = start;
+                } else {
+                    batch = samples[w];
+                    offset = 0;
+                    for (int i = 0; i < size; i++)
+                        batch[i] = randoms[w].nextInt(n);
+                }
+
+                Arrays.fill(gradient, 0.0);
+                loss += function.calculate(x, batch, offset, offset + size, gradient);
+
+                double scale = 1.0 / size;
+                for (int i = 0; i < dim; i++)
+                    gradient[i] *= scale;
+
+                long t = steps.incrementAndGet();
+                update(x, gradient, rate(epoch, t - 1), t);
+            }
+
+            return loss;
+        }
+    }
+
+    private double rate(int epoch, long step) {
+        switch (schedule) {
+            case INVERSE:
+                return learningRate / (1.0 + decay * step);
+            case EXPONENTIAL:
+                return learningRate * Math.pow(decay, epoch);
+            default:
+                return learningRate;
+        }
+    }
+
+    private static boolean converged(double value, double nextValue, double tolerance) {
+        if (Double.isNaN(value))
+            return false;
+        if (value == nextValue)
+            return true;
+        double valueChange = SloppyMath.abs(nextValue - value);
+        double valueAverage = SloppyMath.abs(nextValue + value + EPS) / 2.0;
+        return valueChange / valueAverage < tolerance;
+    }
+}
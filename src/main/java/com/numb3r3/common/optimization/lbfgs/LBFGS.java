@@ -72,6 +72,12 @@ package com.numb3r3.common.optimization.lbfgs;
  *  ,       to eecs.nwu.edu in the directory pub/lbfgs/lbfgs_um.)
  * http://www.ece.northwestern.edu/~nocedal/PDFfiles/limited-memory.pdf
  * </pre>
+ * <p>
+ * All the state of an optimization, including the tolerances and that of the
+ * line search, lives in an <code>LBFGS</code> instance, so independent
+ * optimizations can run concurrently, one instance per thread. An instance is
+ * not thread-safe itself, and can be reused for successive optimizations.
+ * </p>
  *
  * @author Jorge Nocedal: original Fortran version, including comments (July
  *         1990). Robert Dodier: Java translation, August 1997.
@@ -110,7 +116,7 @@ public class LBFGS {
      * greater than 1e-4.
      */
 
-    public static double gtol = 0.01;
+    public double gtol = 0.01;
 
     /**
      * Specify lower bound for the step in the line search. The default value is
@@ -119,7 +125,7 @@ public class LBFGS {
      * which case the exponent should be increased).
      */
 
-    public static double stpmin = 1e-20;
+    public double stpmin = 1e-20;
 
     /**
      * Specify upper bound for the step in the line search. The default value is
@@ -128,9 +134,9 @@ public class LBFGS {
      * which case the exponent should be increased).
      */
 
-    public static double stpmax = 1e20;
+    public double stpmax = 1e20;
 
-    public static int maxfev = 200;
+    public int maxfev = 200;
 
     /**
      * The solution vector as it was at the end of the most recently completed
@@ -142,16 +148,36 @@ public class LBFGS {
      * <tt>LBFGS.lbfgs</tt> automatically stops, then <tt>x</tt> and
      * <tt>solution_cache</tt> are the same.
      */
-    public static double[] solution_cache = null;
+    public double[] solution_cache = null;
 
-    private static double gnorm = 0, stp1 = 0, ftol = 0, stp[] = new double[1],
+    private double gnorm = 0, stp1 = 0, ftol = 0, stp[] = new double[1],
             ys = 0, yy = 0, sq = 0, yr = 0, beta = 0, xnorm = 0;
-    private static int iter = 0, nfun = 0, point = 0, ispt = 0, iypt = 0,
+    private int iter = 0, nfun = 0, point = 0, ispt = 0, iypt = 0,
             info[] = new int[1], bound = 0, npt = 0, cp = 0, i = 0,
             nfev[] = new int[1], inmc = 0, iycn = 0, iscn = 0;
-    private static boolean finish = false;
+    private boolean finish = false;
+
+    private double[] w = null;
+
+    // line search of this optimization
+    private final Mcsrch mcsrch = new Mcsrch(this);
+
+    /**
+     * Create an optimizer whose work arrays are allocated by the first call to
+     * <code>lbfgs</code>.
+     */
+    public LBFGS() {
+    }
 
-    private static double[] w = null;
+    /**
+     * Create an optimizer with its work arrays preallocated for problems of
+     * <code>n</code> variables and <code>m</code> corrections, so that the
+     * iterations allocate nothing.
+     */
+    public LBFGS(int n, int m) {
+        w = new double[n * (2 * m + 1) + 2 * m];
+        solution_cache = new double[n];
+    }
 
     /**
      * This method returns the total number of evaluations of the objective
@@ -160,7 +186,7 @@ public class LBFGS {
      * the line search; the total is only increased after a successful line
      * search.
      */
-    public static int nfevaluations() {
+    public int nfevaluations() {
         return nfun;
     }
 
@@ -291,9 +317,9 @@ public class LBFGS {
      * @throws LBFGS.ExceptionWithIflag
      */
 
-    public static void lbfgs(int n, int m, double[] x, double f, double[] g,
-                             boolean diagco, double[] diag, int[] iprint, double eps, double xtol,
-                             int[] iflag) throws ExceptionWithIflag {
+    public void lbfgs(int n, int m, double[] x, double f, double[] g,
+                      boolean diagco, double[] diag, int[] iprint, double eps, double xtol,
+                      int[] iflag) throws ExceptionWithIflag {
         boolean execute_entire_while_loop = false;
 
         if (w == null || w.length != n * (2 * m + 1) + 2 * m) {
@@ -303,7 +329,8 @@ public class LBFGS {
         if (iflag[0] == 0) {
             // Initialize.
 
-            solution_cache = new double[n];
+            if (solution_cache == null || solution_cache.length != n)
+                solution_cache = new double[n];
             System.arraycopy(x, 0, solution_cache, 0, n);
 
             iter = 0;
@@ -478,7 +505,7 @@ public class LBFGS {
             // if (iprint[1 - 1] >= 0)
             // lb1(iprint, iter, nfun, gnorm, n, m, x, f, g, stp, finish);
 
-            Mcsrch.mcsrch(n, x, f, g, w, ispt + point * n, stp, ftol, xtol, maxfev,
+            mcsrch.mcsrch(n, x, f, g, w, ispt + point * n, stp, ftol, xtol, maxfev,
                     info, nfev, diag, iprint);
 
             if (info[0] == -1) {
@@ -488,8 +515,8 @@ public class LBFGS {
 
             if (iprint[0] > 0)
                 System.err.println("msrch return = nfev=" + nfev[0] + " nfun=" + nfun
-                        + " info=" + info[0] + " bestx=" + Mcsrch.stx[0] + " farx="
-                        + Mcsrch.sty[0] + " brackt=" + Mcsrch.brackt[0] + " stp=" + stp[0]
+                        + " info=" + info[0] + " bestx=" + mcsrch.stx[0] + " farx="
+                        + mcsrch.sty[0] + " brackt=" + mcsrch.brackt[0] + " stp=" + stp[0]
                         + " gnorm=" + Math.sqrt(ddot(n, g, 0, 1, g, 0, 1)) + " xnorm="
                         + Math.sqrt(ddot(n, x, 0, 1, x, 0, 1)));
 
@@ -545,6 +572,35 @@ public class LBFGS {
         }
     }
 
+    /**
+     * Minimize a function by driving <code>lbfgs</code> until it terminates,
+     * with the default diagonal matrix <code>Hk0</code> and no output.
+     *
+     * @param function the objective function
+     * @param x        the initial estimate, replaced by the solution
+     * @param m        the number of corrections used in the BFGS update
+     * @param eps      the accuracy with which the solution is to be found, see
+     *                 <code>lbfgs</code>
+     * @param xtol     an estimate of the machine precision
+     * @return the value of the function at the solution
+     * @throws ExceptionWithIflag if <code>lbfgs</code> fails
+     */
+    public double minimize(ObjectiveFunction function, double[] x, int m, double eps, double xtol)
+            throws ExceptionWithIflag {
+        int n = x.length;
+        double[] diag = new double[n];
+        int[] iprint = new int[]{-1, 0};
+        int[] iflag = new int[]{0};
+
+        double f;
+        do {
+            f = function.computeFunction(x);
+            lbfgs(n, m, x, f, function.computeGradient(x), false, diag, iprint, eps, xtol, iflag);
+        } while (iflag[0] == 1);
+
+        return f;
+    }
+
     /**
      * Print debugging and status messages for <code>lbfgs</code>. Depending on
      * the parameter <code>iprint</code>, this can include number of function
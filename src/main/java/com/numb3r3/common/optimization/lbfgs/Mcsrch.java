@@ -25,19 +25,26 @@ package com.numb3r3.common.optimization.lbfgs;
  * in the file <tt>LBFGS.java</tt> for more information.
  */
 public class Mcsrch {
-    private static int infoc[] = new int[1], j = 0;
-    private static double dg = 0, dgm = 0, dginit = 0, dgtest = 0,
+    private int infoc[] = new int[1], j = 0;
+    private double dg = 0, dgm = 0, dginit = 0, dgtest = 0,
             dgx[] = new double[1], dgxm[] = new double[1], dgy[] = new double[1],
             dgym[] = new double[1], finit = 0, ftest1 = 0, fm = 0,
             fx[] = new double[1], fxm[] = new double[1], fy[] = new double[1],
             fym[] = new double[1];
-    static double stx[] = new double[1];
-    static double sty[] = new double[1];
-    static double stmin = 0, stmax = 0, width = 0, width1 = 0;
-    static boolean brackt[] = new boolean[1];
-    static boolean stage1 = false;
+    double stx[] = new double[1];
+    double sty[] = new double[1];
+    double stmin = 0, stmax = 0, width = 0, width1 = 0;
+    boolean brackt[] = new boolean[1];
+    boolean stage1 = false;
     private static final double ONE_HALF = 0.5, TWO_THIRDS = 0.66, FOUR = 4;
 
+    // optimizer providing the tolerances gtol, stpmin and stpmax
+    private final LBFGS owner;
+
+    Mcsrch(LBFGS owner) {
+        this.owner = owner;
+    }
+
     static double sqr(double x) {
         return x * x;
     }
@@ -136,15 +143,15 @@ public class Mcsrch {
      * Laboratory. Java translation by Robert Dodier, August 1997.
      */
 
-    public static void mcsrch(final int n, double[] x, double f, double[] g,
-                              double[] s, int is0, double[] stp, double ftol, double xtol, int maxfev,
-                              int[] info, int[] nfev, double[] wa, int[] iprint) {
+    public void mcsrch(final int n, double[] x, double f, double[] g,
+                       double[] s, int is0, double[] stp, double ftol, double xtol, int maxfev,
+                       int[] info, int[] nfev, double[] wa, int[] iprint) {
         // System.err.println("mc " + f + " " + stp[0]);
 
         if (info[0] != -1) {
             infoc[0] = 1;
-            if (n <= 0 || stp[0] <= 0 || ftol < 0 || LBFGS.gtol < 0 || xtol < 0
-                    || LBFGS.stpmin < 0 || LBFGS.stpmax < LBFGS.stpmin || maxfev <= 0)
+            if (n <= 0 || stp[0] <= 0 || ftol < 0 || owner.gtol < 0 || xtol < 0
+                    || owner.stpmin < 0 || owner.stpmax < owner.stpmin || maxfev <= 0)
                 return;
 
             // Compute the initial gradient in the search direction
@@ -165,7 +172,7 @@ public class Mcsrch {
             nfev[0] = 0;
             finit = f;
             dgtest = ftol * dginit;
-            width = LBFGS.stpmax - LBFGS.stpmin;
+            width = owner.stpmax - owner.stpmin;
             width1 = width / ONE_HALF;
 
             for (j = 1; j <= n; j += 1) {
@@ -204,8 +211,8 @@ public class Mcsrch {
                 }
 
                 // Force the step to be within the bounds stpmax and stpmin.
-                setSTP(stp, Math.max(stp[0], LBFGS.stpmin));
-                setSTP(stp, Math.min(stp[0], LBFGS.stpmax));
+                setSTP(stp, Math.max(stp[0], owner.stpmin));
+                setSTP(stp, Math.min(stp[0], owner.stpmax));
 
                 // If an unusual termination is to occur then let
                 // stp be the lowest point obtained so far.
@@ -248,11 +255,11 @@ public class Mcsrch {
                 // be too small.
                 info[0] = 6;
 
-            if (stp[0] == LBFGS.stpmax && f <= ftest1 && dg <= dgtest)
+            if (stp[0] == owner.stpmax && f <= ftest1 && dg <= dgtest)
                 // The step is at the upper bound <code>stpmax</code>.
                 info[0] = 5;
 
-            if (stp[0] == LBFGS.stpmin && (f > ftest1 || dg >= dgtest))
+            if (stp[0] == owner.stpmin && (f > ftest1 || dg >= dgtest))
                 // The step is at the lower bound <code>stpmin</code>.
                 info[0] = 4;
 
@@ -266,7 +273,7 @@ public class Mcsrch {
                 // <code>xtol</code>
                 info[0] = 2;
 
-            if (f <= ftest1 && Math.abs(dg) <= LBFGS.gtol * (-dginit))
+            if (f <= ftest1 && Math.abs(dg) <= owner.gtol * (-dginit))
                 // The sufficient decrease condition and the directional
                 // derivative condition hold.
                 info[0] = 1;
@@ -279,7 +286,7 @@ public class Mcsrch {
 
             // In the first stage we seek a step for which the modified
             // function has a nonpositive value and nonnegative derivative.
-            if (stage1 && f <= ftest1 && dg >= Math.min(ftol, LBFGS.gtol) * dginit)
+            if (stage1 && f <= ftest1 && dg >= Math.min(ftol, owner.gtol) * dginit)
                 stage1 = false;
 
             // A modified function is used to predict the step only if
@@ -24,9 +24,10 @@ public class TestLBFGS {
         // iprint[1] = 0~3 : least to most detailed output
         int[] iprint = new int[]{1, 1};
         ObjectiveFunction func = new TestFunc1(numVariables);
+        LBFGS lbfgs = new LBFGS(numVariables, numCorrections);
         do {
             try {
-                LBFGS.lbfgs(numVariables, numCorrections, x,
+                lbfgs.lbfgs(numVariables, numCorrections, x,
                         func.computeFunction(x), func.computeGradient(x), supplyDiag,
                         diag, iprint, accuracy, machinePrecision, iflag);
             } catch (ExceptionWithIflag e) {